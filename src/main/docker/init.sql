@@ -39,9 +39,33 @@ create table publication
     publication_content            varchar(100000)                      not null,
     publication_datetime           timestamp                            not null default now(),
     publication_karma              integer                              not null default 0,
-    publication_preview_image_path varchar(200)
+    publication_preview_image_path varchar(200),
+    publication_excerpt            varchar(300),
+    publication_html               text,
+    publication_content_hash       varchar(64),
+    publication_renderer_version   varchar(100),
+    publication_search_vector      tsvector,
+    publication_deleted            boolean                              not null default false
 );
 
+create index publication_deleted_idx
+    on publication (publication_id) where publication_deleted;
+
+create index publication_preview_image_path_idx
+    on publication (publication_preview_image_path);
+
+create index publication_search_vector_idx
+    on publication using gin (publication_search_vector);
+
+create index publication_datetime_id_idx
+    on publication (publication_datetime, publication_id);
+
+create index publication_datetime_karma_idx
+    on publication (publication_datetime, publication_karma);
+
+create index publication_karma_idx
+    on publication (publication_karma desc) where not publication_deleted;
+
 ---
 create table genre
 (
@@ -219,17 +243,9 @@ create procedure delete_publication(id bigint)
     language plpgsql
 as
 $$
-DECLARE
-    cmnt_id     bigint;
-    -- id комментариев, принадлежащей этой публикации
-    comment_ids bigint[];
 BEGIN
-    comment_ids := ARRAY(SELECT comment_id FROM comment WHERE publication_id = id);
-    -- удалить все лайки с комментариев
-    FOREACH cmnt_id IN ARRAY comment_ids
-        LOOP
-            DELETE FROM upwoted_c uc WHERE uc.comment_id = cmnt_id;
-        END LOOP;
+    -- удалить все лайки с комментариев одним запросом
+    DELETE FROM upwoted_c uc USING comment c WHERE uc.comment_id = c.comment_id AND c.publication_id = id;
     -- удалить все комментарии под публикацией
     DELETE FROM comment WHERE publication_id = id;
     -- удалить все лайки с публикации
@@ -2,8 +2,10 @@ package com.rm.habr;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class HabrApplication {
     /* todo сделать адаптив*/
     /* todo сделать бан пользователей*/
@@ -0,0 +1,28 @@
+package com.rm.habr.controller;
+
+import com.rm.habr.model.Suggestion;
+import com.rm.habr.service.AutocompleteService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@AllArgsConstructor
+public class AutocompleteController {
+    private AutocompleteService autocompleteService;
+
+    @GetMapping("/autocomplete")
+    public List<Suggestion> autocomplete(@RequestParam String type, @RequestParam String prefix) {
+        return switch (type) {
+            case "tag" -> autocompleteService.suggestTags(prefix);
+            case "genre" -> autocompleteService.suggestGenres(prefix);
+            case "header" -> autocompleteService.suggestHeaders(prefix);
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Неизвестный тип подсказок: " + type);
+        };
+    }
+}
@@ -5,8 +5,10 @@ import com.rm.habr.model.Comment;
 import com.rm.habr.model.User;
 import com.rm.habr.repository.CommentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.servlet.http.HttpSession;
 import java.time.LocalDate;
@@ -28,7 +30,9 @@ public class CommentController {
         // todo add commentService
         comment.setPublicationId(publicationId);
         comment.setAuthor(new User((Long) session.getAttribute("userId")));
-        commentRepository.insert(comment);
+        if (commentRepository.insert(comment).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Публикация удалена");
+        }
 
         return "redirect:/publications/" + publicationId;
     }
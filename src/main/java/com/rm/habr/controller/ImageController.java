@@ -1,19 +1,199 @@
 package com.rm.habr.controller;
 
 import com.rm.habr.service.FileStorageService;
+import com.rm.habr.service.ThumbnailService;
 import lombok.AllArgsConstructor;
-import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/*
+ * Файл в хранилище называется sha-256 своего содержимого, поэтому содержимое под именем никогда не меняется:
+ * картинки кэшируются браузером навсегда, а ETag строится из имени и размера без чтения файла.
+ * Как картинка (inline) отдается только файл с сигнатурой png/jpeg/gif/webp, все остальное - скачиванием
+ * application/octet-stream, чтобы загруженный html или svg не выполнялся в origin сайта.
+ */
 @RestController
 @AllArgsConstructor
 public class ImageController {
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String PENDING_CACHE_CONTROL = "public, max-age=60";
+    /*атрибуты, через которые tomcat (NIO-коннектор) отдает файл системным sendfile*/
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private FileStorageService fileStorageService;
+    private ThumbnailService thumbnailService;
+
+    @GetMapping("/image")
+    public void getImage(@RequestParam String filePath,
+                         @RequestParam(required = false) Integer width,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        Optional<Path> image = width == null
+                ? fileStorageService.load(filePath)
+                : fileStorageService.load(filePath, width);
+        if (image.isEmpty()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        Path file = image.get();
+        long size = Files.size(file);
+        String etag = "\"" + file.getFileName() + "-" + size + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        // вместо еще не построенной копии отдан оригинал: по этому url позже появится копия, навсегда не кэшируем.
+        // Если копии не будет (оригинал не шире запрошенного, картинка слишком большая), оригинал и есть ответ
+        boolean thumbnailPending = width != null && filePath.endsWith(file.getFileName().toString())
+                && thumbnailService.isThumbnailExpected(file, width);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, thumbnailPending ? PENDING_CACHE_CONTROL : CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (matchesEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        Optional<String> imageType = getImageContentType(file);
+        response.setContentType(imageType.orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE));
+        if (imageType.isEmpty()) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment");
+        }
+
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if (request.getMethod().equals("HEAD") || length == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, out);
+            }
+        }
+    }
+
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.strip();
+            if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Один диапазон "bytes=a-b", "bytes=a-" или "bytes=-n": {start, end}.
+     * Пустой массив - заголовок не поддерживается (несколько диапазонов, другие единицы), отдается весь файл.
+     * null - диапазон за пределами файла.
+     */
+    static long[] parseRange(String range, long size) {
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).strip();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String from = spec.substring(0, dash).strip();
+            String to = spec.substring(dash + 1).strip();
+            long start;
+            long end;
+            if (from.isEmpty()) {
+                long suffix = Long.parseLong(to);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(from);
+                end = to.isEmpty() ? size - 1 : Math.min(Long.parseLong(to), size - 1);
+            }
+            if (start >= size || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /*тип картинки по сигнатуре файла (расширение берется из имени, которое прислал клиент, и может врать)*/
+    private static Optional<String> getImageContentType(Path file) throws IOException {
+        byte[] header = new byte[12];
+        int read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = in.readNBytes(header, 0, header.length);
+        }
+        if (read >= 8 && startsWith(header, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return Optional.of(MediaType.IMAGE_PNG_VALUE);
+        }
+        if (read >= 3 && startsWith(header, 0xFF, 0xD8, 0xFF)) {
+            return Optional.of(MediaType.IMAGE_JPEG_VALUE);
+        }
+        if (read >= 6 && startsWith(header, 'G', 'I', 'F', '8')) {
+            return Optional.of(MediaType.IMAGE_GIF_VALUE);
+        }
+        if (read >= 12 && startsWith(header, 'R', 'I', 'F', 'F')
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return Optional.of("image/webp");
+        }
+        return Optional.empty();
+    }
 
-    @GetMapping(value = "/image", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public ResponseEntity<Resource> getImage(@RequestParam String filePath) {
-        return ResponseEntity.ok().body(fileStorageService.load(filePath));
+    private static boolean startsWith(byte[] header, int... signature) {
+        for (int i = 0; i < signature.length; i++) {
+            if ((header[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -2,45 +2,72 @@ package com.rm.habr.controller;
 
 import com.rm.habr.dto.CreatePublicationDto;
 import com.rm.habr.dto.UpdatePublicationDto;
+import com.rm.habr.model.PublicationFilter;
+import com.rm.habr.service.MarkdownPreviewService;
 import com.rm.habr.service.PublicationService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpSession;
+import java.util.List;
 
 @Controller
 @Slf4j
 @RequestMapping("/publications")
 public class PublicationController {
     private final PublicationService publicationService;
+    private final MarkdownPreviewService markdownPreviewService;
 
 
     @Autowired
-    public PublicationController(PublicationService publicationService) {
+    public PublicationController(PublicationService publicationService,
+                                 MarkdownPreviewService markdownPreviewService) {
         this.publicationService = publicationService;
-
+        this.markdownPreviewService = markdownPreviewService;
     }
 
     @GetMapping
     public String getAllPublications(Model model,
                                      @RequestParam(value = "genre", required = false, defaultValue = "Все") String genreName,
-                                     @RequestParam(defaultValue = "1") Integer page) {
-        publicationService.fillFindByGenreNameModel(genreName, page, model);
+                                     @RequestParam(required = false) String cursor) {
+        publicationService.fillFindByGenreNameModel(genreName, cursor, model);
         return "publications";
     }
 
     @GetMapping("/byUser")
     public String getAllPublicationsByUser(Model model,
                                            @RequestParam Long userId,
-                                           @RequestParam(defaultValue = "1") Integer page) {
-        publicationService.fillFindByUserIdModel(userId, page, model);
+                                           @RequestParam(required = false) String cursor) {
+        publicationService.fillFindByUserIdModel(userId, cursor, model);
         return "publications";
     }
 
+    @GetMapping("/filter")
+    public String getPublicationsByFilter(Model model,
+                                          @RequestParam(value = "tag", required = false, defaultValue = "") List<Long> tagIds,
+                                          @RequestParam(value = "genre", required = false, defaultValue = "") List<Long> genreIds,
+                                          @RequestParam(required = false, defaultValue = "and") String mode,
+                                          @RequestParam(required = false) String cursor) {
+        PublicationFilter filter = new PublicationFilter(tagIds, genreIds, !mode.equalsIgnoreCase("or"));
+        publicationService.fillFindByFilterModel(filter, cursor, model);
+        return "publications";
+    }
+
+    @GetMapping("/search")
+    public String searchPublications(Model model,
+                                     @RequestParam(value = "q", required = false) String query,
+                                     @RequestParam(required = false) String cursor) {
+        publicationService.fillSearchModel(query, cursor, model);
+        return "search";
+    }
+
     @GetMapping("/{id}")//fixme убрать сеттание в модель
     public String getPublication(@PathVariable long id, Model model, HttpSession session) {
         //todo если пользователь не авторизовался, то вылетит ошибка throw not allowed instead 500
@@ -78,6 +105,15 @@ public class PublicationController {
         return "redirect:/publications";
     }
 
+    @PostMapping(value = "/preview", consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.TEXT_HTML_VALUE)
+    @ResponseBody
+    public ResponseEntity<String> previewPublication(@RequestBody(required = false) String content, HttpSession session) {
+        if (session.getAttribute("userId") == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(markdownPreviewService.getPreviewHtml(content == null ? "" : content));
+    }
+
     @GetMapping("/update")
     public String showPublicationUpdateForm(Model model, @RequestParam long id, HttpSession session) {
         if (session.getAttribute("userId") == null) {
@@ -0,0 +1,98 @@
+package com.rm.habr.controller;
+
+import com.rm.habr.model.UploadSession;
+import com.rm.habr.service.ChunkedUploadService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Загрузка картинки по частям:
+ * POST /uploads?fileName=&size=&sha256= - начать, в ответе id и offset;
+ * PUT /uploads/{id}?offset= с телом-частью - дописать, в ответе новый offset (409 и текущий offset, если разошлись);
+ * GET /uploads/{id} - текущий offset, с него продолжается оборванная загрузка.
+ * Когда файл загружен целиком, в ответе появляется filePath, а в форму публикации вместо самого файла передают uploadId.
+ */
+@RestController
+@RequestMapping("/uploads")
+public class UploadController {
+    private final ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    public UploadController(ChunkedUploadService chunkedUploadService) {
+        this.chunkedUploadService = chunkedUploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> startUpload(@RequestParam String fileName,
+                                                           @RequestParam long size,
+                                                           @RequestParam String sha256,
+                                                           HttpSession session) throws IOException {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            UploadSession upload = chunkedUploadService.start(userId, fileName, size, sha256);
+            return ResponseEntity.status(HttpStatus.CREATED).body(toBody(upload));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getUpload(@PathVariable String uploadId, HttpSession session) {
+        return findUpload(uploadId, session)
+                .map(upload -> ResponseEntity.ok(toBody(upload)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PutMapping(value = "/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> appendChunk(@PathVariable String uploadId,
+                                                           @RequestParam long offset,
+                                                           HttpServletRequest request,
+                                                           HttpSession session) throws IOException {
+        Optional<UploadSession> upload = findUpload(uploadId, session);
+        if (upload.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            if (!chunkedUploadService.append(upload.get(), offset, request.getInputStream())) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(toBody(upload.get()));
+            }
+            return ResponseEntity.ok(toBody(upload.get()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.unprocessableEntity().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private Optional<UploadSession> findUpload(String uploadId, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return chunkedUploadService.find(uploadId, userId);
+    }
+
+    private static Map<String, Object> toBody(UploadSession upload) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("uploadId", upload.getId());
+        body.put("offset", upload.getOffset());
+        body.put("size", upload.getSize());
+        if (upload.getFilePath() != null) {
+            body.put("filePath", upload.getFilePath());
+        }
+        return body;
+    }
+}
@@ -0,0 +1,68 @@
+package com.rm.habr.controller.admin;
+
+import com.rm.habr.model.ExportTable;
+import com.rm.habr.service.CsvExportService;
+import com.rm.habr.service.RightService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Controller
+@RequestMapping("/admin")
+public class ExportController {
+    private final RightService rightService;
+    private final CsvExportService csvExportService;
+
+    @Autowired
+    public ExportController(RightService rightService, CsvExportService csvExportService) {
+        this.rightService = rightService;
+        this.csvExportService = csvExportService;
+    }
+
+    /*выгрузка пишется прямо в ответ, null означает, что ответ уже сформирован*/
+    @GetMapping("/export/{tableName}")
+    public String exportTable(Model model,
+                              HttpSession session,
+                              HttpServletResponse response,
+                              @PathVariable String tableName,
+                              @RequestParam(required = false, defaultValue = "false") boolean gzip) throws IOException {
+        if (!rightService.isUserAdmin(session)) {
+            model.addAttribute("forbiddenMessage", "Вы не админ");
+            return "forbidden";
+        }
+        ExportTable table;
+        try {
+            table = ExportTable.of(tableName);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        String fileName = table.getName() + (gzip ? ".csv.gz" : ".csv");
+        response.setContentType(gzip ? "application/gzip" : "text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(fileName)
+                .build().toString());
+
+        if (gzip) {
+            try (OutputStream out = new GZIPOutputStream(response.getOutputStream(), 64 * 1024)) {
+                csvExportService.export(table, out);
+            }
+        } else {
+            csvExportService.export(table, response.getOutputStream());
+        }
+        return null;
+    }
+}
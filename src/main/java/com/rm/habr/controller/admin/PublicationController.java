@@ -1,26 +1,38 @@
 package com.rm.habr.controller.admin;
 
+import com.rm.habr.model.ImportReport;
+import com.rm.habr.service.PublicationImportService;
 import com.rm.habr.service.PublicationService;
 import com.rm.habr.service.RightService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import java.io.IOException;
 
 @Controller("AdminPublicationController")
 @RequestMapping("/admin")
 public class PublicationController {
     private final RightService rightService;
     private final PublicationService publicationService;
+    private final PublicationImportService publicationImportService;
 
     @Autowired
-    public PublicationController(RightService rightService, PublicationService publicationService) {
+    public PublicationController(RightService rightService, PublicationService publicationService,
+                                 PublicationImportService publicationImportService) {
         this.rightService = rightService;
         this.publicationService = publicationService;
+        this.publicationImportService = publicationImportService;
     }
 
     @GetMapping("/publications")
@@ -33,4 +45,30 @@ public class PublicationController {
         publicationService.fillFindAllByPageModel(page, model);
         return "admin/publications";
     }
+
+    /*тело запроса - NDJSON, читается потоком, поэтому лимит multipart на него не действует*/
+    @PostMapping(value = "/publications/import", consumes = "application/x-ndjson")
+    @ResponseBody
+    public ResponseEntity<ImportReport> importPublications(@RequestParam(defaultValue = "1") long fromLine,
+                                                           HttpServletRequest request,
+                                                           HttpSession session) throws IOException {
+        if (!rightService.isUserAdmin(session)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(publicationImportService.importNdjson(request.getInputStream(), fromLine));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(publicationImportService.getReport());
+        }
+    }
+
+    @GetMapping(value = "/publications/import", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<ImportReport> getImportProgress(HttpSession session) {
+        if (!rightService.isUserAdmin(session)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        ImportReport report = publicationImportService.getReport();
+        return report == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(report);
+    }
 }
@@ -1,30 +1,42 @@
 package com.rm.habr.controller.admin;
 
-import com.rm.habr.service.ReportService;
+import com.rm.habr.model.ReportFormat;
+import com.rm.habr.model.ReportJob;
+import com.rm.habr.model.ReportType;
+import com.rm.habr.service.ReportJobService;
 import com.rm.habr.service.RightService;
-import net.sf.jasperreports.engine.JRException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @Controller
 @RequestMapping("/admin")
 public class ReportController {
     private final RightService rightService;
-    private final ReportService reportService;
+    private final ReportJobService reportJobService;
 
     @Autowired
-    public ReportController(RightService rightService, ReportService reportService) {
+    public ReportController(RightService rightService, ReportJobService reportJobService) {
         this.rightService = rightService;
-        this.reportService = reportService;
+        this.reportJobService = reportJobService;
     }
 
     @GetMapping("/reports")
@@ -37,29 +49,76 @@ public class ReportController {
         return "admin/reports";
     }
 
-    @GetMapping(value = "/reports/best-publications", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    @ResponseBody
-    public Object exportBestPublicationsReport(Model model,
-                                               HttpSession session,
-                                               @RequestParam(required = false, defaultValue = "pdf") String reportFormat)
-            throws JRException, IOException {
+    /*ставит отчет в очередь (или находит уже построенный) и переводит на страницу задания*/
+    @GetMapping("/reports/{reportName}")
+    public String requestReport(Model model,
+                                HttpSession session,
+                                HttpServletResponse response,
+                                @PathVariable String reportName,
+                                @RequestParam(required = false, defaultValue = "pdf") String reportFormat) {
         if (!rightService.isUserAdmin(session)) {
             model.addAttribute("forbiddenMessage", "Вы не админ");
             return "forbidden";
         }
-        return reportService.exportGetBestPublicationsReport(reportFormat);
+        ReportType type;
+        ReportFormat format;
+        try {
+            type = ReportType.of(reportName);
+            format = ReportFormat.of(reportFormat);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        try {
+            ReportJob job = reportJobService.submit(type, format, Map.of());
+            return "redirect:/admin/reports/jobs/" + job.getId();
+        } catch (RejectedExecutionException e) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            model.addAttribute("message", "Сейчас строится слишком много отчетов, повторите попытку позже");
+            return "admin/report-job";
+        }
     }
 
-    @GetMapping(value = "/reports/best-authors", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    @ResponseBody
-    public Object exportBestAuthorsReport(Model model,
-                                          HttpSession session,
-                                          @RequestParam(required = false, defaultValue = "pdf") String reportFormat)
-            throws JRException, IOException {
+    /*готовый отчет отдается файлом, пока он строится - страница со статусом, которая сама обновляется*/
+    @GetMapping("/reports/jobs/{jobId}")
+    public String getReportJob(Model model,
+                               HttpSession session,
+                               HttpServletResponse response,
+                               @PathVariable String jobId) throws IOException {
         if (!rightService.isUserAdmin(session)) {
             model.addAttribute("forbiddenMessage", "Вы не админ");
             return "forbidden";
         }
-        return reportService.exportGetBestUsersReport(reportFormat);
+        Optional<ReportJob> job = reportJobService.findById(jobId);
+        if (job.isEmpty()) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            model.addAttribute("message", "Отчет не найден или устарел, запросите его заново");
+            return "admin/report-job";
+        }
+        if (job.get().getStatus() == ReportJob.Status.DONE) {
+            writeReport(response, job.get());
+            return null;
+        }
+        model.addAttribute("job", job.get());
+        return "admin/report-job";
+    }
+
+    @GetMapping(value = "/reports/jobs/{jobId}/status", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<Map<String, String>> getReportJobStatus(HttpSession session, @PathVariable String jobId) {
+        if (!rightService.isUserAdmin(session)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return reportJobService.findById(jobId)
+                .map(job -> ResponseEntity.ok(Map.of("id", job.getId(), "status", job.getStatus().name())))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static void writeReport(HttpServletResponse response, ReportJob job) throws IOException {
+        response.setContentType(job.getFormat().getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(job.getType().getFileName() + "." + job.getFormat().getExtension())
+                .build().toString());
+        response.setContentLength(job.getResult().length);
+        response.getOutputStream().write(job.getResult());
     }
 }
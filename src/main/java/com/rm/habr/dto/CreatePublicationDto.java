@@ -14,9 +14,10 @@ public class CreatePublicationDto {
     @NotNull
     @Size(min = 100, max = 1000000, message = "Размер содержимого поста должен быть в пределах от 100 до 1000000 символов!")
     public String content;
-    @NotNull
     //todo check mime-type
     public MultipartFile previewImage;
+    /*id загрузки по частям через /uploads, завершенной этим же пользователем, вместо previewImage*/
+    public String uploadId;
     @NotNull
     @Size(min = 1, message = "Количество жанров должно быть минимум 1")
     public Long[] genreIds;
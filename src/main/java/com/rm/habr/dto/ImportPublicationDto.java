@@ -0,0 +1,17 @@
+package com.rm.habr.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/*одна строка NDJSON-файла импорта*/
+@Data
+public class ImportPublicationDto {
+    public Long userId;
+    public String header;
+    public String content;
+    public String previewImagePath;
+    public LocalDateTime publishDateTime;
+    public Long[] genreIds;
+    public Long[] tagIds;
+}
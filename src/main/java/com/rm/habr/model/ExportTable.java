@@ -0,0 +1,27 @@
+package com.rm.habr.model;
+
+public enum ExportTable {
+    PUBLICATIONS("publications"),
+    COMMENTS("comments"),
+    USERS("users");
+
+    /*имя в url и в имени файла выгрузки*/
+    private final String name;
+
+    ExportTable(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static ExportTable of(String name) {
+        for (ExportTable table : values()) {
+            if (table.name.equals(name)) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная выгрузка " + name);
+    }
+}
@@ -15,6 +15,11 @@ public class Genre {
         this.id = id;
     }
 
+    public Genre(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
     @Override
     public String toString() {
         return name;
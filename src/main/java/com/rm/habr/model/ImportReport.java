@@ -0,0 +1,45 @@
+package com.rm.habr.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*ход импорта публикаций, обновляется после каждого пакета*/
+@Data
+public class ImportReport {
+    public static final int MAX_ERRORS = 100;
+
+    private LocalDateTime startedAt = LocalDateTime.now();
+    private LocalDateTime finishedAt;
+    private long linesRead;
+    private long importedCount;
+    private long failedCount;
+    private int batchesCount;
+    private int failedBatchesCount;
+    /*если чтение файла оборвалось - первая несохраненная строка, с нее импорт можно повторить (параметр fromLine)*/
+    private Long resumeFromLine;
+    /*первые MAX_ERRORS ошибок, чтобы отчет не рос вместе с файлом*/
+    private List<String> errors = new ArrayList<>();
+
+    public void addError(String error) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    public ImportReport copy() {
+        ImportReport copy = new ImportReport();
+        copy.setStartedAt(startedAt);
+        copy.setFinishedAt(finishedAt);
+        copy.setLinesRead(linesRead);
+        copy.setImportedCount(importedCount);
+        copy.setFailedCount(failedCount);
+        copy.setBatchesCount(batchesCount);
+        copy.setFailedBatchesCount(failedBatchesCount);
+        copy.setResumeFromLine(resumeFromLine);
+        copy.setErrors(new ArrayList<>(errors));
+        return copy;
+    }
+}
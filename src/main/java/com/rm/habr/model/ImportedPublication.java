@@ -0,0 +1,16 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/*вставленная при импорте публикация без текста: то, что нужно индексам автодополнения и фильтров*/
+@Data
+@AllArgsConstructor
+public class ImportedPublication {
+    private Long id;
+    private String header;
+    private List<Long> genreIds;
+    private List<Long> tagIds;
+}
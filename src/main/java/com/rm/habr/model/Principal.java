@@ -0,0 +1,13 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/*то, что нужно для проверки прав: пользователь существует, его логин и есть ли у него роль администратора*/
+@Data
+@AllArgsConstructor
+public class Principal {
+    private Long id;
+    private String login;
+    private boolean admin;
+}
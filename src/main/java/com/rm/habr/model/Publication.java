@@ -12,11 +12,12 @@ public class Publication {
     private User author;
     private String header;
     private String content;
+    private String htmlContent;
     private LocalDateTime publishDateTime;
     private int viewsCount;
     private int karma;
+    private int commentsCount;
     private String previewImagePath;
     private List<Genre> genres = new ArrayList<>();
     private List<Tag> tags = new ArrayList<>();
-    private List<Comment> comments = new ArrayList<>();
 }
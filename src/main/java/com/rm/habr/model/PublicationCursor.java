@@ -0,0 +1,48 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Optional;
+
+/*позиция в ленте для keyset-пагинации: (дата публикации, id) последней показанной публикации*/
+@Data
+@AllArgsConstructor
+public class PublicationCursor {
+    private static final String SEPARATOR = "|";
+
+    private LocalDateTime publishDateTime;
+    private long publicationId;
+
+    public static PublicationCursor of(PublicationSummary publication) {
+        return new PublicationCursor(publication.getPublishDateTime(), publication.getId());
+    }
+
+    /*курсор отдается клиенту как непрозрачная строка*/
+    public String encode() {
+        String raw = publishDateTime + SEPARATOR + publicationId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Optional<PublicationCursor> decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = raw.lastIndexOf(SEPARATOR);
+            if (separatorIndex < 0) {
+                return Optional.empty();
+            }
+            LocalDateTime publishDateTime = LocalDateTime.parse(raw.substring(0, separatorIndex));
+            long publicationId = Long.parseLong(raw.substring(separatorIndex + 1));
+            return Optional.of(new PublicationCursor(publishDateTime, publicationId));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
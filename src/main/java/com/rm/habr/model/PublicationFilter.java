@@ -0,0 +1,19 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/*фильтр ленты по тэгам и жанрам: matchAll = true - нужны все выбранные (AND), false - хотя бы один (OR)*/
+@Data
+@AllArgsConstructor
+public class PublicationFilter {
+    private List<Long> tagIds;
+    private List<Long> genreIds;
+    private boolean matchAll;
+
+    public boolean isEmpty() {
+        return tagIds.isEmpty() && genreIds.isEmpty();
+    }
+}
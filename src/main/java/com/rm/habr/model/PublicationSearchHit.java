@@ -0,0 +1,16 @@
+package com.rm.habr.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class PublicationSearchHit {
+    private Long id;
+    private User author;
+    private String header;
+    private LocalDateTime publishDateTime;
+    /*фрагмент текста с подсвеченными совпадениями, уже экранированный html*/
+    private String snippet;
+    private float rank;
+}
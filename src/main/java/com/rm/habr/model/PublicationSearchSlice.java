@@ -0,0 +1,15 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class PublicationSearchSlice {
+    /*одна страница результатов поиска, отсортированная по релевантности*/
+    private List<PublicationSearchHit> hits;
+    /*курсор следующей страницы, null если страница последняя*/
+    private String nextCursor;
+}
@@ -0,0 +1,23 @@
+package com.rm.habr.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*публикация для ленты, админки и отчетов: без содержимого, только короткий текстовый отрывок*/
+@Data
+public class PublicationSummary {
+    private Long id;
+    private User author;
+    private String header;
+    private String excerpt;
+    private LocalDateTime publishDateTime;
+    private int viewsCount;
+    private int karma;
+    private int commentsCount;
+    private String previewImagePath;
+    private List<Genre> genres = new ArrayList<>();
+    private List<Tag> tags = new ArrayList<>();
+}
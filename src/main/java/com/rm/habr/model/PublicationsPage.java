@@ -11,7 +11,7 @@ public class PublicationsPage {
     public static final int PAGE_SIZE = 10;
 
     /*тут хранятся не все записи, а только одна страница*/
-    private List<Publication> publications;
+    private List<PublicationSummary> publications;
     /*кол-во записей во всей таблице (нужно для пагинации)*/
     private int rowsCount;
 }
@@ -0,0 +1,17 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class PublicationsSlice {
+    public static final int PAGE_SIZE = 10;
+
+    /*одна страница ленты, начиная с позиции курсора*/
+    private List<PublicationSummary> publications;
+    /*курсор следующей страницы, null если страница последняя*/
+    private String nextCursor;
+}
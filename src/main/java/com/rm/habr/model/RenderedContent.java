@@ -0,0 +1,16 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/*результат рендера markdown, который сохраняется вместе с публикацией*/
+@Data
+@AllArgsConstructor
+public class RenderedContent {
+    private String html;
+    private String excerpt;
+    /*sha-256 исходного markdown*/
+    private String contentHash;
+    /*версия рендера: если она поменялась, публикацию нужно перерендерить*/
+    private String rendererVersion;
+}
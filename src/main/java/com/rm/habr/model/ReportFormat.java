@@ -0,0 +1,32 @@
+package com.rm.habr.model;
+
+public enum ReportFormat {
+    PDF("application/pdf", "pdf"),
+    HTML("text/html;charset=UTF-8", "html"),
+    CSV("text/csv;charset=UTF-8", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    ReportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ReportFormat of(String reportFormat) {
+        for (ReportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(reportFormat)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Не верный формат отчета");
+    }
+}
@@ -0,0 +1,22 @@
+package com.rm.habr.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+/*задание на построение отчета, одно на все одинаковые запросы*/
+@Data
+public class ReportJob {
+    public enum Status {QUEUED, RUNNING, DONE, FAILED}
+
+    private final String id;
+    private final ReportType type;
+    private final ReportFormat format;
+    private final Map<String, String> params;
+    private final Instant createdAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile byte[] result;
+    private volatile String error;
+    private volatile Instant finishedAt;
+}
@@ -0,0 +1,33 @@
+package com.rm.habr.model;
+
+public enum ReportType {
+    BEST_PUBLICATIONS("best-publications", "best_publications"),
+    BEST_USERS("best-authors", "best_users");
+
+    /*имя в url*/
+    private final String urlName;
+    /*имя шаблона в reports/ и файла отчета*/
+    private final String fileName;
+
+    ReportType(String urlName, String fileName) {
+        this.urlName = urlName;
+        this.fileName = fileName;
+    }
+
+    public String getUrlName() {
+        return urlName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public static ReportType of(String urlName) {
+        for (ReportType type : values()) {
+            if (type.urlName.equals(urlName)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный отчет " + urlName);
+    }
+}
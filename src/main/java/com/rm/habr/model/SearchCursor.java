@@ -0,0 +1,49 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+/*позиция в результатах поиска: (релевантность, id) последнего показанного результата*/
+@Data
+@AllArgsConstructor
+public class SearchCursor {
+    private static final String SEPARATOR = "|";
+
+    private float rank;
+    private long publicationId;
+
+    public static SearchCursor of(PublicationSearchHit hit) {
+        return new SearchCursor(hit.getRank(), hit.getId());
+    }
+
+    public String encode() {
+        String raw = Float.toString(rank) + SEPARATOR + publicationId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Optional<SearchCursor> decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = raw.lastIndexOf(SEPARATOR);
+            if (separatorIndex < 0) {
+                return Optional.empty();
+            }
+            float rank = Float.parseFloat(raw.substring(0, separatorIndex));
+            // parseFloat принимает и NaN/Infinity, релевантность такой быть не может
+            if (!Float.isFinite(rank)) {
+                return Optional.empty();
+            }
+            long publicationId = Long.parseLong(raw.substring(separatorIndex + 1));
+            return Optional.of(new SearchCursor(rank, publicationId));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.rm.habr.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/*подсказка автодополнения: id тэга, жанра или публикации и отображаемый текст*/
+@Data
+@AllArgsConstructor
+public class Suggestion {
+    private Long id;
+    private String text;
+}
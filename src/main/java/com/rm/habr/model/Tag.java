@@ -15,6 +15,11 @@ public class Tag {
         this.id = id;
     }
 
+    public Tag(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -0,0 +1,23 @@
+package com.rm.habr.model;
+
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/*загрузка файла по частям: куда пишутся части и что должно получиться в итоге*/
+@Data
+public class UploadSession {
+    private final String id;
+    private final long userId;
+    private final String fileName;
+    private final long size;
+    /*ожидаемый sha-256 всего файла, hex*/
+    private final String sha256;
+    private final Path tmpFile;
+    /*сколько байт уже записано и подтверждено клиенту*/
+    private volatile long offset;
+    private volatile Instant updatedAt = Instant.now();
+    /*путь в хранилище после проверки контрольной суммы*/
+    private volatile String filePath;
+}
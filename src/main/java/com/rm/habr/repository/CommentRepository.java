@@ -6,12 +6,17 @@ import com.rm.habr.model.Comment;
 import com.rm.habr.repository.mapper.AdminCommentMapper;
 import com.rm.habr.repository.mapper.CommentMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Repository
 public class CommentRepository {
@@ -35,6 +40,7 @@ public class CommentRepository {
                 from "comment"
                          inner join "_user" on "comment".user_id = "_user".user_id
                          inner join "publication" on "comment".publication_id = "publication".publication_id
+                where not publication_deleted
                 limit %d
                 offset %d * (?-1)
                 """.formatted(PAGE_SIZE, PAGE_SIZE);
@@ -42,10 +48,14 @@ public class CommentRepository {
         return jdbcTemplate.getJdbcTemplate().query(sql, new AdminCommentMapper(), page);
     }
 
-    public long insert(CreateCommentDto comment) {
+    /*комментарий к скрытой (удаленной) публикации не добавляется: тогда empty*/
+    public Optional<Long> insert(CreateCommentDto comment) {
         final String sql = """
                 insert into "comment" (user_id, publication_id, comment_content)
-                values  (:userId, :publicationId, :content)
+                select :userId, :publicationId, :content
+                where exists(select 1
+                             from "publication"
+                             where publication_id = :publicationId and not publication_deleted)
                 """;
         var params = new MapSqlParameterSource()
                 .addValue("userId", comment.getAuthor().getId())
@@ -53,8 +63,11 @@ public class CommentRepository {
                 .addValue("content", comment.getContent());
         var keyHolder = new GeneratedKeyHolder();
 
-        jdbcTemplate.update(sql, params, keyHolder);
-        return (long) keyHolder.getKeys().get("comment_id");
+        int inserted = jdbcTemplate.update(sql, params, keyHolder);
+        if (inserted == 0) {
+            return Optional.empty();
+        }
+        return Optional.of((long) keyHolder.getKeys().get("comment_id"));
     }
 
     public List<Comment> findCommentsByPublicationId(long publicationId) {
@@ -75,6 +88,20 @@ public class CommentRepository {
         return jdbcTemplate.getJdbcTemplate().query(sql, new CommentMapper(), publicationId);
     }
 
+    /*кол-во комментариев для набора публикаций одним сгруппированным запросом, без загрузки текста комментариев*/
+    public Map<Long, Integer> countCommentsByPublicationIds(long[] publicationIds) {
+        final String sql = """
+                SELECT publication_id, count(*)
+                FROM "comment"
+                WHERE publication_id = any(?)
+                GROUP BY publication_id
+                """;
+        return jdbcTemplate.getJdbcTemplate()
+                .query(sql, (rs, rowNum) -> Map.entry(rs.getLong("publication_id"), rs.getInt("count")), publicationIds)
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
     public void delete(long id) {
         final String sql = """
                 DELETE FROM "comment" WHERE comment_id = ?
@@ -84,9 +111,29 @@ public class CommentRepository {
 
     public Integer getCommentsCount() {
         final String sql = """
-                select count(*) from "comment";
+                select count(*)
+                from "comment"
+                         inner join "publication" on "comment".publication_id = "publication".publication_id
+                where not publication_deleted;
                 """;
         return jdbcTemplate.getJdbcTemplate().queryForObject(sql, (rs, rowNum) -> rs.getInt("count"));
     }
 
+    /*все комментарии видимых публикаций для выгрузки, строки читаются курсором*/
+    @Transactional(readOnly = true)
+    public <T> T exportAll(int fetchSize, ResultSetExtractor<T> extractor) {
+        final String sql = """
+                SELECT comment_id,
+                       "comment".publication_id,
+                       "comment".user_id,
+                       comment_datetime,
+                       comment_karma,
+                       comment_content
+                FROM "comment"
+                         INNER JOIN "publication" on "comment".publication_id = "publication".publication_id
+                WHERE NOT publication_deleted
+                ORDER BY comment_id
+                """;
+        return StreamingQuery.query(jdbcTemplate.getJdbcTemplate(), sql, fetchSize, extractor);
+    }
 }
@@ -1,12 +1,10 @@
 package com.rm.habr.repository;
 
-import com.rm.habr.model.Comment;
 import com.rm.habr.model.Genre;
 import com.rm.habr.repository.mapper.GenreMapper;
-import org.simpleflatmapper.jdbc.spring.JdbcTemplateMapperFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,12 +14,30 @@ public class GenreRepository {
 
     private final NamedParameterJdbcTemplate jdbcTemplate;
 
+    /*жанров единицы и меняются они редко, поэтому держим весь справочник в памяти*/
+    private final RefreshableDictionary<Genre> dictionary =
+            new RefreshableDictionary<>(this::loadAll, Genre::getId, genre -> new Genre(genre.getId(), genre.getName()));
+
     @Autowired
     public GenreRepository(NamedParameterJdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
     public List<Genre> findAll() {
+        return dictionary.findAll();
+    }
+
+    /*жанры по id из справочника в памяти*/
+    public List<Genre> findByIds(long[] genreIds) {
+        return dictionary.findByIds(genreIds);
+    }
+
+    @Scheduled(fixedDelayString = "${dictionary-refresh-interval-ms:600000}")
+    public void refresh() {
+        dictionary.refresh();
+    }
+
+    private List<Genre> loadAll() {
         final String sql = """
                 SELECT genre.genre_id, genre_name
                 FROM genre
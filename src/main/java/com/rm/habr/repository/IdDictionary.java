@@ -0,0 +1,46 @@
+package com.rm.habr.repository;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/*
+ * Неизменяемый снимок маленького справочника (жанры, тэги).
+ * Id хранятся в отсортированном long[], сущности - в параллельном массиве, поиск по id - бинарный.
+ */
+public final class IdDictionary<T> {
+    private final long[] ids;
+    private final T[] values;
+    private final List<T> all;
+
+    private IdDictionary(long[] ids, T[] values, List<T> all) {
+        this.ids = ids;
+        this.values = values;
+        this.all = all;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> IdDictionary<T> of(List<T> entities, ToLongFunction<T> idGetter) {
+        T[] values = (T[]) entities.stream()
+                .sorted(Comparator.comparingLong(idGetter))
+                .toArray();
+        long[] ids = Arrays.stream(values).mapToLong(idGetter).toArray();
+        return new IdDictionary<>(ids, values, List.copyOf(entities));
+    }
+
+    /*null, если такого id в снимке нет*/
+    public T get(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? values[index] : null;
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /*в порядке, в котором записи пришли из БД*/
+    public List<T> getAll() {
+        return all;
+    }
+}
@@ -2,48 +2,91 @@ package com.rm.habr.repository;
 
 import com.rm.habr.model.*;
 import com.rm.habr.repository.mapper.*;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Repository
 public class PublicationRepository {
     public static final int PAGE_SIZE = 10;
 
+    /*поисковый вектор: заголовок весит больше текста, морфология русская и английская*/
+    private static final String SEARCH_VECTOR = """
+            setweight(to_tsvector('russian', :header), 'A') || setweight(to_tsvector('english', :header), 'A') ||
+            setweight(to_tsvector('russian', :content), 'B') || setweight(to_tsvector('english', :content), 'B')""";
+
+    private static final String SEARCH_HEADLINE_OPTIONS = "MaxFragments=2, MaxWords=30, MinWords=10, StartSel="
+            + PublicationSearchHitMapper.START_SELECTION + ", StopSel=" + PublicationSearchHitMapper.STOP_SELECTION;
+
     private final NamedParameterJdbcTemplate jdbcTemplate;
 
     private final CommentRepository commentRepository;
 
+    private final GenreRepository genreRepository;
+
+    private final TagRepository tagRepository;
+
     @Autowired
     public PublicationRepository(NamedParameterJdbcTemplate jdbcTemplate,
-                                 CommentRepository commentRepository) {
+                                 CommentRepository commentRepository,
+                                 GenreRepository genreRepository,
+                                 TagRepository tagRepository) {
         this.jdbcTemplate = jdbcTemplate;
         this.commentRepository = commentRepository;
+        this.genreRepository = genreRepository;
+        this.tagRepository = tagRepository;
     }
 
     @Transactional
-    public long insert(Publication publication) {
+    public long insert(Publication publication, RenderedContent rendered) {
         final String sql = """
                 insert into "publication" (user_id, publication_header,
-                publication_preview_image_path, publication_content)
-                values  (:userId, :header, :previewPath, :content)
-                """;
+                publication_preview_image_path, publication_content, publication_excerpt,
+                publication_html, publication_content_hash, publication_renderer_version, publication_search_vector)
+                values  (:userId, :header, :previewPath, :content, :excerpt,
+                :html, :contentHash, :rendererVersion, %s)
+                """.formatted(SEARCH_VECTOR);
 
         var params = new MapSqlParameterSource()
                 .addValue("userId", publication.getAuthor().getId())
                 .addValue("header", publication.getHeader())
                 .addValue("previewPath", publication.getPreviewImagePath())
-                .addValue("content", publication.getContent());
+                .addValue("content", publication.getContent())
+                .addValue("excerpt", rendered.getExcerpt())
+                .addValue("html", rendered.getHtml())
+                .addValue("contentHash", rendered.getContentHash())
+                .addValue("rendererVersion", rendered.getRendererVersion());
         var keyHolder = new GeneratedKeyHolder();
 
-        jdbcTemplate.update(sql, params, keyHolder);
-        long publicationId = (long) keyHolder.getKeys().get("publication_id");
+        jdbcTemplate.update(sql, params, keyHolder, new String[]{"publication_id"});
+        long publicationId = keyHolder.getKey().longValue();
 
         for (Genre genre : publication.getGenres())
             addGenre(publicationId, genre.getId());
@@ -78,34 +121,204 @@ public class PublicationRepository {
         jdbcTemplate.update(sql, params);
     }
 
-    public List<Publication> findAll() {
+    /*
+     * Пакетная вставка для импорта: публикации по одной пишутся потоком COPY во временную таблицу
+     * (id берется из последовательности publication по умолчанию, жанры и тэги - в колонках-массивах),
+     * в памяти держится только текущая строка. Затем они переносятся в publication одним insert ... select
+     * (там же считается поисковый вектор), связи с жанрами и тэгами - одним insert на таблицу.
+     * Весь пакет в одной транзакции: при ошибке откатывается только он.
+     */
+    @Transactional
+    public List<ImportedPublication> insertAll(Iterator<Publication> publications,
+                                               Function<Publication, RenderedContent> renderer) {
+        final String createStageSql = """
+                CREATE TEMP TABLE publication_import (LIKE "publication" INCLUDING DEFAULTS) ON COMMIT DROP
+                """;
+        jdbcTemplate.getJdbcTemplate().execute(createStageSql);
+        final String addRelationsSql = """
+                ALTER TABLE publication_import
+                    ADD COLUMN import_genre_ids bigint[],
+                    ADD COLUMN import_tag_ids   bigint[]
+                """;
+        jdbcTemplate.getJdbcTemplate().execute(addRelationsSql);
+
+        final String copySql = """
+                COPY publication_import (user_id, publication_header, publication_content,
+                publication_datetime, publication_preview_image_path, publication_excerpt, publication_html,
+                publication_content_hash, publication_renderer_version, import_genre_ids, import_tag_ids)
+                FROM STDIN (FORMAT csv)
+                """;
+        jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = new CopyManager(connection.unwrap(BaseConnection.class)).copyIn(copySql);
+            try {
+                while (publications.hasNext()) {
+                    Publication publication = publications.next();
+                    RenderedContent content = renderer.apply(publication);
+                    byte[] row = toCsvRow(publication.getAuthor().getId(), publication.getHeader(),
+                            publication.getContent(), Timestamp.valueOf(publication.getPublishDateTime()),
+                            publication.getPreviewImagePath(), content.getExcerpt(), content.getHtml(),
+                            content.getContentHash(), content.getRendererVersion(),
+                            toPgArray(publication.getGenres().stream().map(Genre::getId).toList()),
+                            toPgArray(publication.getTags().stream().map(Tag::getId).toList()))
+                            .getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(row, 0, row.length);
+                }
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+
+        final String moveSql = """
+                INSERT INTO "publication" (publication_id, user_id, publication_header, publication_content,
+                publication_datetime, publication_preview_image_path, publication_excerpt, publication_html,
+                publication_content_hash, publication_renderer_version, publication_search_vector)
+                SELECT publication_id, user_id, publication_header, publication_content,
+                publication_datetime, publication_preview_image_path, publication_excerpt, publication_html,
+                publication_content_hash, publication_renderer_version,
+                setweight(to_tsvector('russian', publication_header), 'A') ||
+                setweight(to_tsvector('english', publication_header), 'A') ||
+                setweight(to_tsvector('russian', publication_content), 'B') ||
+                setweight(to_tsvector('english', publication_content), 'B')
+                FROM publication_import
+                """;
+        jdbcTemplate.getJdbcTemplate().update(moveSql);
+
+        final String genresSql = """
+                INSERT INTO relates_to (publication_id, genre_id)
+                SELECT publication_id, unnest(import_genre_ids) FROM publication_import
+                """;
+        jdbcTemplate.getJdbcTemplate().update(genresSql);
+        final String tagsSql = """
+                INSERT INTO marked (publication_id, tag_id)
+                SELECT publication_id, unnest(import_tag_ids) FROM publication_import
+                """;
+        jdbcTemplate.getJdbcTemplate().update(tagsSql);
+
+        final String importedSql = """
+                SELECT publication_id, publication_header, import_genre_ids, import_tag_ids
+                FROM publication_import
+                ORDER BY publication_id
+                """;
+        return jdbcTemplate.getJdbcTemplate().query(importedSql, (rs, rowNum) -> new ImportedPublication(
+                rs.getLong("publication_id"),
+                rs.getString("publication_header"),
+                toList(rs.getArray("import_genre_ids")),
+                toList(rs.getArray("import_tag_ids"))));
+    }
+
+    /*null в csv-формате COPY - пустое значение без кавычек, пустая строка - ""*/
+    private static String toCsvRow(Object... values) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                csv.append(',');
+            }
+            if (values[i] != null) {
+                csv.append('"').append(values[i].toString().replace("\"", "\"\"")).append('"');
+            }
+        }
+        return csv.append('\n').toString();
+    }
+
+    /*литерал массива postgres вида {1,2,3}*/
+    private static String toPgArray(List<Long> values) {
+        return values.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static List<Long> toList(Array array) throws SQLException {
+        return array == null ? List.of() : List.of((Long[]) array.getArray());
+    }
+
+    public List<PublicationSummary> findAll() {
         final String sql = """
                 SELECT "publication".publication_id,
                        publication_views_count,
                        publication_header,
                        publication_preview_image_path,
-                       publication_content,
+                       publication_excerpt,
                        publication_datetime,
-                       (select count(*) 
-                       from upwoted_p 
-                       where upwoted_p.publication_id = publication.publication_id) as publication_karma,
+                       publication_karma,
                        "_user".user_id,
                        user_login,
                        user_email,
                        user_karma
                 FROM "publication"
                          LEFT JOIN "_user" on "_user".user_id = "publication".user_id
+                WHERE NOT publication_deleted
                 ORDER BY publication_datetime DESC
                 """;
 
-        var publications = jdbcTemplate.getJdbcTemplate().query(sql, new PublicationMapper());
-        publications.forEach(p -> p.setComments(commentRepository.findCommentsByPublicationId(p.getId())));
-        publications.forEach(p -> p.setGenres(findGenresByPublicationId(p.getId())));
-        publications.forEach(p -> p.setTags(findTagsByPublicationId(p.getId())));
+        var publications = jdbcTemplate.getJdbcTemplate().query(sql, new PublicationSummaryMapper());
+        fillRelations(publications);
 
         return publications;
     }
 
+    /*только id и заголовки: для построения индекса автодополнения*/
+    public List<Suggestion> findAllHeaders() {
+        final String sql = """
+                SELECT publication_id, publication_header
+                FROM "publication"
+                WHERE NOT publication_deleted
+                """;
+
+        return jdbcTemplate.getJdbcTemplate().query(sql,
+                (rs, rowNum) -> new Suggestion(rs.getLong("publication_id"), rs.getString("publication_header")));
+    }
+
+    /*публикации с заданными id, от новых id к старым*/
+    public List<PublicationSummary> findByIds(long[] publicationIds) {
+        //language=sql
+        final String sql = """
+                SELECT "publication".publication_id,
+                       publication_views_count,
+                       publication_header,
+                       publication_preview_image_path,
+                       publication_excerpt,
+                       publication_datetime,
+                       publication_karma,
+                       "_user".user_id,
+                       user_login,
+                       user_email,
+                       user_karma
+                FROM "publication"
+                         LEFT JOIN "_user" on "_user".user_id = "publication".user_id
+                WHERE "publication".publication_id = any(?) AND NOT publication_deleted
+                ORDER BY "publication".publication_id DESC
+                """;
+
+        var publications = jdbcTemplate.getJdbcTemplate().query(sql, new PublicationSummaryMapper(), publicationIds);
+        fillRelations(publications);
+        return publications;
+    }
+
+    /*все связи публикация-жанр, для построения индекса фильтров*/
+    public void forEachGenreLink(BiConsumer<Long, Long> publicationIdAndGenreId) {
+        final String sql = """
+                SELECT relates_to.publication_id, genre_id
+                FROM relates_to
+                         INNER JOIN "publication" on "publication".publication_id = relates_to.publication_id
+                WHERE NOT publication_deleted
+                """;
+        jdbcTemplate.getJdbcTemplate().query(sql, (RowCallbackHandler) rs ->
+                publicationIdAndGenreId.accept(rs.getLong("publication_id"), rs.getLong("genre_id")));
+    }
+
+    /*все связи публикация-тэг, для построения индекса фильтров*/
+    public void forEachTagLink(BiConsumer<Long, Long> publicationIdAndTagId) {
+        final String sql = """
+                SELECT marked.publication_id, tag_id
+                FROM marked
+                         INNER JOIN "publication" on "publication".publication_id = marked.publication_id
+                WHERE NOT publication_deleted
+                """;
+        jdbcTemplate.getJdbcTemplate().query(sql, (RowCallbackHandler) rs ->
+                publicationIdAndTagId.accept(rs.getLong("publication_id"), rs.getLong("tag_id")));
+    }
+
     public PublicationsPage findPage(Integer page) {
         //language=sql
         final String sql = """
@@ -113,65 +326,78 @@ public class PublicationRepository {
                        publication_views_count,
                        publication_header,
                        publication_preview_image_path,
-                       publication_content,
+                       publication_excerpt,
                        publication_datetime,
-                       (select count(*) 
-                       from upwoted_p 
-                       where upwoted_p.publication_id = publication.publication_id) as publication_karma,
+                       publication_karma,
                        "_user".user_id,
                        user_login,
                        user_email,
                        user_karma
                 FROM "publication"
                          LEFT JOIN "_user" on "_user".user_id = "publication".user_id
-                ORDER BY publication_datetime DESC
+                WHERE NOT publication_deleted
+                ORDER BY publication_datetime DESC, "publication".publication_id DESC
                 limit %d
                 offset %d * (?-1)
                 """.formatted(PAGE_SIZE, PAGE_SIZE);
 
-        var publications = jdbcTemplate.getJdbcTemplate().query(sql, new PublicationMapper(), page);
-        publications.forEach(p -> p.setComments(commentRepository.findCommentsByPublicationId(p.getId())));
-        publications.forEach(p -> p.setGenres(findGenresByPublicationId(p.getId())));
-        publications.forEach(p -> p.setTags(findTagsByPublicationId(p.getId())));
+        var publications = jdbcTemplate.getJdbcTemplate().query(sql, new PublicationSummaryMapper(), page);
+        fillRelations(publications);
 
         return new PublicationsPage(publications, getPublicationsCount());
     }
 
-    public PublicationsPage findPageByGenreName(String genreName, Integer page) {
+    public PublicationsSlice findPage(PublicationCursor cursor) {
         //language=sql
         final String sql = """
                 SELECT "publication".publication_id,
                        publication_views_count,
                        publication_header,
                        publication_preview_image_path,
-                       publication_content,
+                       publication_excerpt,
                        publication_datetime,
-                       (select count(*) 
-                       from upwoted_p 
-                       where upwoted_p.publication_id = publication.publication_id) as publication_karma,
+                       publication_karma,
                        "_user".user_id,
                        user_login,
                        user_email,
                        user_karma
                 FROM "publication"
                          LEFT JOIN "_user" on "_user".user_id = "publication".user_id
-                         INNER JOIN relates_to genres on "publication".publication_id = genres.publication_id
-                         INNER JOIN genre on genres.genre_id = genre.genre_id
-                WHERE genre.genre_name ilike ?
-                ORDER BY publication_datetime DESC
+                WHERE NOT publication_deleted AND %s
+                ORDER BY publication_datetime DESC, "publication".publication_id DESC
                 limit %d
-                offset %d * (? - 1)
-                """
-                .formatted(PAGE_SIZE, PAGE_SIZE);
+                """.formatted(keysetCondition(cursor), PAGE_SIZE + 1);
 
-        var publications = jdbcTemplate.getJdbcTemplate()
-                .query(sql, new PublicationMapper(), genreName.equalsIgnoreCase("Все") ? true : genreName, page);
+        var publications = jdbcTemplate.query(sql, keysetParams(cursor), new PublicationSummaryMapper());
+        return toSlice(publications);
+    }
 
-        publications.forEach(p -> p.setComments(commentRepository.findCommentsByPublicationId(p.getId())));
-        publications.forEach(p -> p.setGenres(findGenresByPublicationId(p.getId())));
-        publications.forEach(p -> p.setTags(findTagsByPublicationId(p.getId())));
+    public PublicationsSlice findPageByGenreName(String genreName, PublicationCursor cursor) {
+        //language=sql
+        final String sql = """
+                SELECT "publication".publication_id,
+                       publication_views_count,
+                       publication_header,
+                       publication_preview_image_path,
+                       publication_excerpt,
+                       publication_datetime,
+                       publication_karma,
+                       "_user".user_id,
+                       user_login,
+                       user_email,
+                       user_karma
+                FROM "publication"
+                         LEFT JOIN "_user" on "_user".user_id = "publication".user_id
+                         INNER JOIN relates_to genres on "publication".publication_id = genres.publication_id
+                         INNER JOIN genre on genres.genre_id = genre.genre_id
+                WHERE genre.genre_name ilike :genreName AND NOT publication_deleted AND %s
+                ORDER BY publication_datetime DESC, "publication".publication_id DESC
+                limit %d
+                """.formatted(keysetCondition(cursor), PAGE_SIZE + 1);
 
-        return new PublicationsPage(publications, getPublicationsCountByGenre(genreName));
+        var params = keysetParams(cursor).addValue("genreName", genreName);
+        var publications = jdbcTemplate.query(sql, params, new PublicationSummaryMapper());
+        return toSlice(publications);
     }
 
     public Optional<Publication> findById(long id) {
@@ -180,10 +406,9 @@ public class PublicationRepository {
                        publication_views_count,
                        publication_header,
                        publication_content,
+                       publication_html,
                        publication_datetime,
-                       (select count(*) 
-                       from upwoted_p 
-                       where upwoted_p.publication_id = publication.publication_id) as publication_karma,
+                       publication_karma,
                        publication_preview_image_path,
                        "_user".user_id,
                        user_login,
@@ -191,7 +416,7 @@ public class PublicationRepository {
                        user_karma
                 FROM "publication"
                          LEFT JOIN "_user"  on "_user".user_id = "publication".user_id
-                WHERE publication_id = ?
+                WHERE publication_id = ? AND NOT publication_deleted
                 """;
         var publication = jdbcTemplate.getJdbcTemplate().query(sql, new PublicationMapper(), id)
                 .stream().findAny();
@@ -202,35 +427,170 @@ public class PublicationRepository {
         return publication;
     }
 
-    public void updateHeaderAndContentById(long id, String header, String content) {
+    public void updateHeaderAndContentById(long id, String header, String content, RenderedContent rendered) {
         final String sql = """
-                UPDATE "publication" SET publication_header = ?, publication_content = ?
-                WHERE publication_id = ?
+                UPDATE "publication" SET publication_header = :header, publication_content = :content,
+                publication_excerpt = :excerpt, publication_html = :html, publication_content_hash = :contentHash,
+                publication_renderer_version = :rendererVersion, publication_search_vector = %s
+                WHERE publication_id = :id
+                """.formatted(SEARCH_VECTOR);
+        var params = new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("header", header)
+                .addValue("content", content)
+                .addValue("excerpt", rendered.getExcerpt())
+                .addValue("html", rendered.getHtml())
+                .addValue("contentHash", rendered.getContentHash())
+                .addValue("rendererVersion", rendered.getRendererVersion());
+        jdbcTemplate.update(sql, params);
+    }
+
+    /*полнотекстовый поиск по заголовку и тексту, результаты по убыванию релевантности с пагинацией по курсору*/
+    public PublicationSearchSlice search(String query, SearchCursor cursor) {
+        //language=sql
+        final String sql = """
+                SELECT publication_id,
+                       publication_header,
+                       publication_datetime,
+                       user_id,
+                       user_login,
+                       rank,
+                       ts_headline('russian', publication_content, query, :headlineOptions) AS snippet
+                FROM (SELECT "publication".publication_id,
+                             publication_header,
+                             publication_content,
+                             publication_datetime,
+                             "_user".user_id,
+                             user_login,
+                             q.query,
+                             ts_rank_cd(publication_search_vector, q.query)::real AS rank
+                      FROM "publication"
+                               CROSS JOIN (SELECT websearch_to_tsquery('russian', :query)
+                                                  || websearch_to_tsquery('english', :query) AS query) q
+                               LEFT JOIN "_user" on "_user".user_id = "publication".user_id
+                      WHERE publication_search_vector @@ q.query AND NOT publication_deleted) ranked
+                WHERE %s
+                ORDER BY rank DESC, publication_id DESC
+                limit %d
+                """.formatted(cursor == null ? "true" : "(rank, publication_id) < (:cursorRank, :cursorId)",
+                PAGE_SIZE + 1);
+
+        var params = new MapSqlParameterSource()
+                .addValue("query", query)
+                .addValue("headlineOptions", SEARCH_HEADLINE_OPTIONS);
+        if (cursor != null) {
+            params.addValue("cursorRank", cursor.getRank())
+                    .addValue("cursorId", cursor.getPublicationId());
+        }
+
+        List<PublicationSearchHit> hits = jdbcTemplate.query(sql, params, new PublicationSearchHitMapper());
+        String nextCursor = null;
+        if (hits.size() > PAGE_SIZE) {
+            hits = new ArrayList<>(hits.subList(0, PAGE_SIZE));
+            nextCursor = SearchCursor.of(hits.get(PAGE_SIZE - 1)).encode();
+        }
+        return new PublicationSearchSlice(hits, nextCursor);
+    }
+
+    /*публикации, отрендеренные другой версией рендера (или еще не отрендеренные)*/
+    public List<Publication> findWithOutdatedRender(String rendererVersion, int limit) {
+        final String sql = """
+                SELECT publication_id, publication_content
+                FROM "publication"
+                WHERE (publication_renderer_version IS DISTINCT FROM ? OR publication_excerpt IS NULL)
+                  AND NOT publication_deleted
+                ORDER BY publication_id
+                limit ?
                 """;
-        jdbcTemplate.getJdbcTemplate().update(sql, header, content, id);
+        return jdbcTemplate.getJdbcTemplate().query(sql, (rs, rowNum) -> {
+            Publication publication = new Publication();
+            publication.setId(rs.getLong("publication_id"));
+            publication.setContent(rs.getString("publication_content"));
+            return publication;
+        }, rendererVersion, limit);
     }
 
-    public void updateViewsCount(long id) {
+    /*не перезаписывает публикацию, если ее уже успели обновить с актуальной версией рендера*/
+    public void updateRenderedContent(long id, RenderedContent rendered) {
         final String sql = """
-                UPDATE "publication" SET publication_views_count = publication_views_count + 1
-                WHERE publication_id = ?
+                UPDATE "publication" SET publication_excerpt = ?, publication_html = ?,
+                publication_content_hash = ?, publication_renderer_version = ?
+                WHERE publication_id = ? AND publication_renderer_version IS DISTINCT FROM ?
                 """;
-        jdbcTemplate.getJdbcTemplate().update(sql, id);
+        jdbcTemplate.getJdbcTemplate().update(sql, rendered.getExcerpt(), rendered.getHtml(),
+                rendered.getContentHash(), rendered.getRendererVersion(), id, rendered.getRendererVersion());
+    }
+
+    /*прибавляет просмотры одним UPDATE; строки блокируются заранее по порядку id, иначе сбросы могут взаимоблокироваться*/
+    @Transactional
+    public void addViewsCounts(Map<Long, Long> viewsCounts) {
+        if (viewsCounts.isEmpty()) {
+            return;
+        }
+        final String lockSql = """
+                SELECT publication_id FROM "publication"
+                WHERE publication_id = ANY(?)
+                ORDER BY publication_id
+                FOR UPDATE
+                """;
+        long[] publicationIds = viewsCounts.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        jdbcTemplate.getJdbcTemplate().query(lockSql, (rs, rowNum) -> rs.getLong("publication_id"), publicationIds);
+
+        final String sql = """
+                UPDATE "publication" p SET publication_views_count = p.publication_views_count + v.views
+                FROM (VALUES %s) AS v(publication_id, views)
+                WHERE p.publication_id = v.publication_id
+                """.formatted(String.join(", ", Collections.nCopies(viewsCounts.size(), "(?::bigint, ?::integer)")));
+
+        List<Object> args = new ArrayList<>();
+        viewsCounts.forEach((publicationId, views) -> {
+            args.add(publicationId);
+            args.add(views);
+        });
+        jdbcTemplate.getJdbcTemplate().update(sql, args.toArray());
     }
 
+    /*publication_karma поддерживается в той же транзакции, что и сам лайк*/
+    @Transactional
     public void addLike(long publicationId, long userId) {
         final String sql = """
-                INSERT INTO upwoted_p (publication_id, user_id) VALUES (?, ?)
+                INSERT INTO upwoted_p (publication_id, user_id)
+                SELECT publication_id, ? FROM "publication"
+                WHERE publication_id = ? AND NOT publication_deleted
+                ON CONFLICT DO NOTHING
                 """;
 
-        jdbcTemplate.getJdbcTemplate().update(sql, publicationId, userId);
+        int inserted = jdbcTemplate.getJdbcTemplate().update(sql, userId, publicationId);
+        if (inserted > 0) {
+            updateKarma(publicationId, 1);
+        }
     }
 
+    @Transactional
     public void deleteLike(long publicationId, long userId) {
         final String sql = """
                 DELETE FROM upwoted_p WHERE publication_id = ? AND user_id = ?
                 """;
-        jdbcTemplate.getJdbcTemplate().update(sql, publicationId, userId);
+        int deleted = jdbcTemplate.getJdbcTemplate().update(sql, publicationId, userId);
+        if (deleted > 0) {
+            updateKarma(publicationId, -deleted);
+        }
+    }
+
+    private void updateKarma(long publicationId, int delta) {
+        final String sql = """
+                UPDATE "publication" SET publication_karma = publication_karma + ?
+                WHERE publication_id = ?
+                """;
+        jdbcTemplate.getJdbcTemplate().update(sql, delta, publicationId);
+    }
+
+    /*публикация есть и не скрыта удалением*/
+    public boolean isVisible(long publicationId) {
+        final String sql = """
+                SELECT exists(SELECT 1 FROM "publication" WHERE publication_id = ? AND NOT publication_deleted)
+                """;
+        return Boolean.TRUE.equals(jdbcTemplate.getJdbcTemplate().queryForObject(sql, Boolean.class, publicationId));
     }
 
     public boolean checkUpVoted(long publicationId, long userId) {
@@ -247,30 +607,76 @@ public class PublicationRepository {
     }
 
     private List<Genre> findGenresByPublicationId(long publicationId) {
+        return findGenresByPublicationIds(new long[]{publicationId})
+                .getOrDefault(publicationId, new ArrayList<>());
+    }
+
+    private List<Tag> findTagsByPublicationId(long publicationId) {
+        return findTagsByPublicationIds(new long[]{publicationId})
+                .getOrDefault(publicationId, new ArrayList<>());
+    }
+
+    /*подгружает жанры, тэги и кол-во комментариев сразу для всей страницы: по одному запросу на каждое отношение*/
+    private void fillRelations(List<PublicationSummary> publications) {
+        if (publications.isEmpty()) {
+            return;
+        }
+        long[] publicationIds = publications.stream().mapToLong(PublicationSummary::getId).distinct().toArray();
+
+        Map<Long, List<Genre>> genres = findGenresByPublicationIds(publicationIds);
+        Map<Long, List<Tag>> tags = findTagsByPublicationIds(publicationIds);
+        Map<Long, Integer> commentsCounts = commentRepository.countCommentsByPublicationIds(publicationIds);
+
+        for (PublicationSummary publication : publications) {
+            publication.setGenres(genres.getOrDefault(publication.getId(), new ArrayList<>()));
+            publication.setTags(tags.getOrDefault(publication.getId(), new ArrayList<>()));
+            publication.setCommentsCount(commentsCounts.getOrDefault(publication.getId(), 0));
+        }
+    }
+
+    /*из БД берутся только id жанров, названия - из справочника в памяти*/
+    private Map<Long, List<Genre>> findGenresByPublicationIds(long[] publicationIds) {
         final String sql = """
-                SELECT genre.genre_id, genre_name
-                FROM genre
-                    INNER JOIN relates_to rt on genre.genre_id = rt.genre_id
-                WHERE rt.publication_id = ?
+                SELECT publication_id, genre_id AS related_id
+                FROM relates_to
+                WHERE publication_id = any(?)
                 """;
 
-        return jdbcTemplate.getJdbcTemplate().query(sql, new GenreMapper(), publicationId);
+        Map<Long, List<Genre>> genres = new HashMap<>();
+        findRelatedIds(sql, publicationIds)
+                .forEach((publicationId, genreIds) -> genres.put(publicationId, genreRepository.findByIds(genreIds)));
+        return genres;
     }
 
-    private List<Tag> findTagsByPublicationId(long publicationId) {
+    /*из БД берутся только id тэгов, названия - из справочника в памяти*/
+    private Map<Long, List<Tag>> findTagsByPublicationIds(long[] publicationIds) {
         final String sql = """
-                SELECT "tag".tag_id, "tag".tag_name
-                FROM "tag"
-                    INNER JOIN marked on "tag".tag_id = marked.tag_id
-                WHERE marked.publication_id = ?
+                SELECT publication_id, tag_id AS related_id
+                FROM marked
+                WHERE publication_id = any(?)
                 """;
 
-        return jdbcTemplate.getJdbcTemplate().query(sql, new TagMapper(), publicationId);
+        Map<Long, List<Tag>> tags = new HashMap<>();
+        findRelatedIds(sql, publicationIds)
+                .forEach((publicationId, tagIds) -> tags.put(publicationId, tagRepository.findByIds(tagIds)));
+        return tags;
+    }
+
+    private Map<Long, long[]> findRelatedIds(String sql, long[] publicationIds) {
+        Map<Long, List<Long>> relatedIds = new HashMap<>();
+        jdbcTemplate.getJdbcTemplate().query(sql, (RowCallbackHandler) rs -> relatedIds
+                .computeIfAbsent(rs.getLong("publication_id"), publicationId -> new ArrayList<>())
+                .add(rs.getLong("related_id")), publicationIds);
+
+        Map<Long, long[]> result = new HashMap<>();
+        relatedIds.forEach((publicationId, ids) -> result.put(publicationId,
+                ids.stream().mapToLong(Long::longValue).toArray()));
+        return result;
     }
 
     public Integer getPublicationsCount() {
         final String sql = """
-                select count(*) from "publication";
+                select count(*) from "publication" where not publication_deleted;
                 """;
         return jdbcTemplate.getJdbcTemplate().queryForObject(sql, (rs, rowNum) -> rs.getInt("count"));
     }
@@ -280,54 +686,137 @@ public class PublicationRepository {
                 select count(*) from "publication"
                  inner join relates_to on relates_to.publication_id = "publication".publication_id
                  inner join genre on genre.genre_id = relates_to.genre_id
-                 where genre.genre_name = ?;
+                 where genre.genre_name = ? and not publication_deleted;
                 """;
         return jdbcTemplate.getJdbcTemplate().queryForObject(sql, (rs, rowNum) -> rs.getInt("count"), genreName);
     }
 
     public Integer getPublicationsCountByUser(Long userId) {
         final var sql = """
-                select count(*)from "publication" where "publication".user_id = ?;
+                select count(*) from "publication" where "publication".user_id = ? and not publication_deleted;
                 """;
         return jdbcTemplate.getJdbcTemplate().queryForObject(sql, (rs, rowNum) -> rs.getInt("count"), userId);
     }
 
 
-    public PublicationsPage findByUserId(Long userId, Integer page) {
-
+    public PublicationsSlice findByUserId(Long userId, PublicationCursor cursor) {
+        //language=sql
         final String sql = """
                 SELECT "publication".publication_id,
                        publication_views_count,
                        publication_header,
                        publication_preview_image_path,
-                       publication_content,
+                       publication_excerpt,
                        publication_datetime,
-                       (select count(*) 
-                       from upwoted_p 
-                       where upwoted_p.publication_id = publication.publication_id) as publication_karma,
+                       publication_karma,
                        "_user".user_id,
                        user_login,
                        user_email,
                        user_karma
                 FROM "publication"
                          LEFT JOIN "_user" on "_user".user_id = "publication".user_id
-                         INNER JOIN relates_to genres on "publication".publication_id = genres.publication_id
-                         INNER JOIN genre on genres.genre_id = genre.genre_id
-                WHERE "publication".user_id = ?
-                ORDER BY publication_datetime DESC
+                WHERE "publication".user_id = :userId AND NOT publication_deleted AND %s
+                ORDER BY publication_datetime DESC, "publication".publication_id DESC
                 limit %d
-                offset %d * (? - 1)
-                """.formatted(PAGE_SIZE, PAGE_SIZE);
+                """.formatted(keysetCondition(cursor), PAGE_SIZE + 1);
 
-        var publications = jdbcTemplate.getJdbcTemplate().query(sql, new PublicationMapper(), userId, page);
+        var params = keysetParams(cursor).addValue("userId", userId);
+        var publications = jdbcTemplate.query(sql, params, new PublicationSummaryMapper());
+        return toSlice(publications);
+    }
 
-        publications.forEach(p -> p.setGenres(findGenresByPublicationId(p.getId())));
-        publications.forEach(p -> p.setTags(findTagsByPublicationId(p.getId())));
+    /*keyset-пагинация: берем строки строго после курсора по индексу (publication_datetime, publication_id)*/
+    private String keysetCondition(PublicationCursor cursor) {
+        if (cursor == null) {
+            return "true";
+        }
+        return "(publication_datetime, \"publication\".publication_id) < (:cursorDateTime, :cursorId)";
+    }
+
+    private MapSqlParameterSource keysetParams(PublicationCursor cursor) {
+        var params = new MapSqlParameterSource();
+        if (cursor != null) {
+            params.addValue("cursorDateTime", Timestamp.valueOf(cursor.getPublishDateTime()))
+                    .addValue("cursorId", cursor.getPublicationId());
+        }
+        return params;
+    }
 
-        return new PublicationsPage(publications, getPublicationsCountByUser(userId));
+    /*запрашивается PAGE_SIZE + 1 строк: лишняя строка означает, что есть следующая страница*/
+    private PublicationsSlice toSlice(List<PublicationSummary> publications) {
+        String nextCursor = null;
+        if (publications.size() > PAGE_SIZE) {
+            publications = new ArrayList<>(publications.subList(0, PAGE_SIZE));
+            nextCursor = PublicationCursor.of(publications.get(PAGE_SIZE - 1)).encode();
+        }
+        fillRelations(publications);
+        return new PublicationsSlice(publications, nextCursor);
     }
 
+    /*публикация сразу скрывается отовсюду, сами строки удаляет фоновая очистка (PublicationPurgeService)*/
     public void delete(long id) {
+        final String sql = """
+                UPDATE "publication" SET publication_deleted = true WHERE publication_id = ?
+                """;
+        jdbcTemplate.getJdbcTemplate().update(sql, id);
+    }
+
+    public Optional<String> findPreviewImagePath(long id) {
+        final String sql = """
+                SELECT publication_preview_image_path FROM "publication" WHERE publication_id = ?
+                """;
+        return jdbcTemplate.getJdbcTemplate().queryForList(sql, String.class, id).stream()
+                .filter(Objects::nonNull)
+                .findAny();
+    }
+
+    /*сколько публикаций (включая скрытые) ссылаются на картинку: картинки общие, если загружали одинаковый файл*/
+    public int countByPreviewImagePath(String previewImagePath) {
+        final String sql = """
+                SELECT count(*) FROM "publication" WHERE publication_preview_image_path = ?
+                """;
+        return jdbcTemplate.getJdbcTemplate().queryForObject(sql, Integer.class, previewImagePath);
+    }
+
+    /*какие из путей картинок используются хоть одной публикацией*/
+    public Set<String> findReferencedPreviewImagePaths(String[] previewImagePaths) {
+        final String sql = """
+                SELECT DISTINCT publication_preview_image_path
+                FROM "publication"
+                WHERE publication_preview_image_path = any(?)
+                """;
+        return new HashSet<>(jdbcTemplate.getJdbcTemplate().queryForList(sql, String.class, (Object) previewImagePaths));
+    }
+
+    public List<Long> findDeletedIds(int limit) {
+        final String sql = """
+                SELECT publication_id FROM "publication" WHERE publication_deleted LIMIT ?
+                """;
+        return jdbcTemplate.getJdbcTemplate().queryForList(sql, Long.class, limit);
+    }
+
+    /*удаляет до chunkSize комментариев скрытой публикации вместе с их лайками, возвращает число удаленных комментариев*/
+    public int purgeComments(long id, int chunkSize) {
+        final String sql = """
+                WITH chunk AS (SELECT comment_id FROM "comment" WHERE publication_id = ? LIMIT ?),
+                     comment_likes AS (DELETE FROM upwoted_c WHERE comment_id IN (SELECT comment_id FROM chunk))
+                DELETE FROM "comment" WHERE comment_id IN (SELECT comment_id FROM chunk)
+                """;
+        return jdbcTemplate.getJdbcTemplate().update(sql, id, chunkSize);
+    }
+
+    /*удаляет до chunkSize лайков скрытой публикации, возвращает число удаленных*/
+    public int purgeLikes(long id, int chunkSize) {
+        final String sql = """
+                DELETE FROM upwoted_p
+                WHERE publication_id = ?
+                  AND user_id IN (SELECT user_id FROM upwoted_p WHERE publication_id = ? LIMIT ?)
+                """;
+        return jdbcTemplate.getJdbcTemplate().update(sql, id, id, chunkSize);
+    }
+
+    /*окончательное удаление, после purgeComments и purgeLikes процедуре остается только сама строка*/
+    public void purge(long id) {
         final String sql = """
                 call delete_publication(?);
                 """;
@@ -342,6 +831,7 @@ public class PublicationRepository {
                            "_user".user_karma
                     from "publication"
                              inner join "_user" on "_user".user_id = "publication".user_id
+                    where not publication_deleted
                     group by user_login, "_user".user_karma
                     order by count("publication".user_id) desc
                     limit %d;
@@ -351,16 +841,14 @@ public class PublicationRepository {
 
     }
 
-    public List<Publication> findBestPublications() {
+    public List<PublicationSummary> findBestPublications() {
         final String sql = """
                 SELECT publication_id,
                        publication_views_count,
                        publication_header,
-                       publication_content,
+                       publication_excerpt,
                        publication_datetime,
-                       (select count(*) 
-                       from upwoted_p 
-                       where upwoted_p.publication_id = publication.publication_id) as publication_karma,
+                       publication_karma,
                        publication_preview_image_path,
                        "_user".user_id,
                        user_login,
@@ -368,11 +856,12 @@ public class PublicationRepository {
                        user_karma
                 FROM "publication"
                          LEFT JOIN "_user"  on "_user".user_id = "publication".user_id
+                where not publication_deleted
                 order by publication_karma desc
                 limit %d;
                 """.formatted(PAGE_SIZE);
 
-        return jdbcTemplate.getJdbcTemplate().query(sql, new PublicationMapper());
+        return jdbcTemplate.getJdbcTemplate().query(sql, new PublicationSummaryMapper());
     }
 
     public List<MiniPublication> getBestMiniPublications() {
@@ -382,17 +871,34 @@ public class PublicationRepository {
                        publication_views_count
                 from "publication"
                 where publication_datetime between now() - interval '7 days' and now()
-                order by ((select count(*) 
-                       from upwoted_p 
-                       where upwoted_p.publication_id = publication.publication_id), publication_views_count) desc
+                  and not publication_deleted
+                order by publication_karma desc, publication_views_count desc
                 limit 5;
                 """;
 
         var miniPublications = jdbcTemplate.getJdbcTemplate().query(sql, new MiniPublicationMapper());
-        miniPublications.forEach(mp -> {
-            var comments = commentRepository.findCommentsByPublicationId(mp.getId());
-            mp.setCommentsCount(comments.size());
-        });
+        long[] publicationIds = miniPublications.stream().mapToLong(MiniPublication::getId).toArray();
+        Map<Long, Integer> commentsCounts = commentRepository.countCommentsByPublicationIds(publicationIds);
+        miniPublications.forEach(mp -> mp.setCommentsCount(commentsCounts.getOrDefault(mp.getId(), 0)));
         return miniPublications;
     }
+
+    /*все публикации для выгрузки, строки читаются курсором*/
+    @Transactional(readOnly = true)
+    public <T> T exportAll(int fetchSize, ResultSetExtractor<T> extractor) {
+        final String sql = """
+                SELECT publication_id,
+                       user_id,
+                       publication_header,
+                       publication_datetime,
+                       publication_views_count,
+                       publication_karma,
+                       publication_preview_image_path,
+                       publication_content
+                FROM "publication"
+                WHERE NOT publication_deleted
+                ORDER BY publication_id
+                """;
+        return StreamingQuery.query(jdbcTemplate.getJdbcTemplate(), sql, fetchSize, extractor);
+    }
 }
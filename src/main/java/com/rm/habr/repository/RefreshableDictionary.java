@@ -0,0 +1,60 @@
+package com.rm.habr.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/*
+ * Справочник в памяти поверх IdDictionary: загружается при первом обращении, перечитывается по refresh().
+ * Снимок общий для всех запросов, а сущности изменяемые (@Data), поэтому наружу отдаются копии.
+ */
+final class RefreshableDictionary<T> {
+    private final Supplier<List<T>> loader;
+    private final ToLongFunction<T> idGetter;
+    private final UnaryOperator<T> copier;
+    private volatile IdDictionary<T> dictionary;
+
+    RefreshableDictionary(Supplier<List<T>> loader, ToLongFunction<T> idGetter, UnaryOperator<T> copier) {
+        this.loader = loader;
+        this.idGetter = idGetter;
+        this.copier = copier;
+    }
+
+    List<T> findAll() {
+        return getDictionary().getAll().stream().map(copier).toList();
+    }
+
+    /*сущности по id; если какого-то id нет, справочник перечитывается один раз*/
+    List<T> findByIds(long[] ids) {
+        IdDictionary<T> current = getDictionary();
+        for (long id : ids) {
+            if (!current.contains(id)) {
+                refresh();
+                current = dictionary;
+                break;
+            }
+        }
+
+        List<T> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            T value = current.get(id);
+            if (value != null) {
+                result.add(copier.apply(value));
+            }
+        }
+        return result;
+    }
+
+    void refresh() {
+        dictionary = IdDictionary.of(loader.get(), idGetter);
+    }
+
+    private IdDictionary<T> getDictionary() {
+        if (dictionary == null) {
+            refresh();
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,25 @@
+package com.rm.habr.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/*
+ * Запрос, который читает строки курсором по fetchSize штук, а не весь результат в память.
+ * Драйвер postgres использует курсор только вне autocommit, поэтому вызывающий метод должен быть в транзакции.
+ */
+final class StreamingQuery {
+    private StreamingQuery() {
+    }
+
+    static <T> T query(JdbcTemplate jdbcTemplate, String sql, int fetchSize, ResultSetExtractor<T> extractor) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, extractor);
+    }
+}
@@ -1,12 +1,10 @@
 package com.rm.habr.repository;
 
-import com.rm.habr.model.Genre;
 import com.rm.habr.model.Tag;
 import com.rm.habr.repository.mapper.TagMapper;
-import org.simpleflatmapper.jdbc.spring.JdbcTemplateMapperFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,12 +14,30 @@ public class TagRepository {
 
     private final NamedParameterJdbcTemplate jdbcTemplate;
 
+    /*тэгов немного и меняются они редко, поэтому держим весь справочник в памяти*/
+    private final RefreshableDictionary<Tag> dictionary =
+            new RefreshableDictionary<>(this::loadAll, Tag::getId, tag -> new Tag(tag.getId(), tag.getName()));
+
     @Autowired
     public TagRepository(NamedParameterJdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
     public List<Tag> findAll() {
+        return dictionary.findAll();
+    }
+
+    /*тэги по id из справочника в памяти*/
+    public List<Tag> findByIds(long[] tagIds) {
+        return dictionary.findByIds(tagIds);
+    }
+
+    @Scheduled(fixedDelayString = "${dictionary-refresh-interval-ms:600000}")
+    public void refresh() {
+        dictionary.refresh();
+    }
+
+    private List<Tag> loadAll() {
         final String sql = """
                 SELECT "tag".tag_id, tag_name
                 FROM "tag"
@@ -1,15 +1,18 @@
 package com.rm.habr.repository;
 
 import com.rm.habr.dto.RegisterUserDto;
+import com.rm.habr.model.Principal;
 import com.rm.habr.model.User;
 import com.rm.habr.repository.mapper.UserMapper;
 import org.simpleflatmapper.jdbc.spring.JdbcTemplateMapperFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -100,6 +103,22 @@ public class UserRepository {
         return userId.isPresent();
     }
 
+    /*пользователь и его роль одним запросом*/
+    public Optional<Principal> findPrincipalById(long id) {
+        final String sql = """
+                select _user.user_id,
+                       _user.user_login,
+                       exists(select 1 from "admin" where "admin".user_id = _user.user_id) as is_admin
+                from _user
+                where _user.user_id = ?
+                """;
+        return jdbcTemplate.getJdbcTemplate().query(sql,
+                        (rs, rowNum) -> new Principal(rs.getLong("user_id"), rs.getString("user_login"),
+                                rs.getBoolean("is_admin")),
+                        id)
+                .stream().findAny();
+    }
+
     public List<User> findPage(Integer page) {
         final String sql = """
                 select user_id, user_email, user_login, user_karma
@@ -131,4 +150,18 @@ public class UserRepository {
         jdbcTemplate.getJdbcTemplate().update(sql, userId);
     }
 
+    /*все пользователи для выгрузки (без хэшей паролей), строки читаются курсором*/
+    @Transactional(readOnly = true)
+    public <T> T exportAll(int fetchSize, ResultSetExtractor<T> extractor) {
+        final String sql = """
+                SELECT user_id,
+                       user_login,
+                       user_email,
+                       user_full_name,
+                       user_karma
+                FROM _user
+                ORDER BY user_id
+                """;
+        return StreamingQuery.query(jdbcTemplate.getJdbcTemplate(), sql, fetchSize, extractor);
+    }
 }
@@ -18,6 +18,7 @@ public class PublicationMapper implements RowMapper<Publication> {
         publication.setViewsCount(rs.getInt("publication_views_count"));
         publication.setHeader(rs.getString("publication_header"));
         publication.setContent(rs.getString("publication_content"));
+        publication.setHtmlContent(rs.getString("publication_html"));
         publication.setPreviewImagePath(rs.getString("publication_preview_image_path"));
         publication.setPublishDateTime(rs.getTimestamp("publication_datetime").toLocalDateTime());
         publication.setKarma(rs.getInt("publication_karma"));
@@ -0,0 +1,40 @@
+package com.rm.habr.repository.mapper;
+
+import com.rm.habr.model.PublicationSearchHit;
+import com.rm.habr.model.User;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.util.HtmlUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class PublicationSearchHitMapper implements RowMapper<PublicationSearchHit> {
+    /*ts_headline выделяет совпадения этими символами, после экранирования они заменяются на <mark>*/
+    public static final String START_SELECTION = "\u0002";
+    public static final String STOP_SELECTION = "\u0003";
+
+    @Override
+    public PublicationSearchHit mapRow(ResultSet rs, int rowNum) throws SQLException {
+        PublicationSearchHit hit = new PublicationSearchHit();
+        hit.setId(rs.getLong("publication_id"));
+        hit.setAuthor(mapUser(rs, rowNum));
+        hit.setHeader(rs.getString("publication_header"));
+        hit.setPublishDateTime(rs.getTimestamp("publication_datetime").toLocalDateTime());
+        hit.setSnippet(highlight(rs.getString("snippet")));
+        hit.setRank(rs.getFloat("rank"));
+        return hit;
+    }
+
+    private String highlight(String snippet) {
+        return HtmlUtils.htmlEscape(snippet)
+                .replace(START_SELECTION, "<mark>")
+                .replace(STOP_SELECTION, "</mark>");
+    }
+
+    private User mapUser(ResultSet rs, int rowNum) throws SQLException {
+        return User.builder()
+                .id(rs.getLong("user_id"))
+                .login(rs.getString("user_login"))
+                .build();
+    }
+}
@@ -0,0 +1,33 @@
+package com.rm.habr.repository.mapper;
+
+import com.rm.habr.model.PublicationSummary;
+import com.rm.habr.model.User;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class PublicationSummaryMapper implements RowMapper<PublicationSummary> {
+    @Override
+    public PublicationSummary mapRow(ResultSet rs, int rowNum) throws SQLException {
+        PublicationSummary publication = new PublicationSummary();
+        publication.setId(rs.getLong("publication_id"));
+        publication.setAuthor(mapUser(rs, rowNum));
+        publication.setViewsCount(rs.getInt("publication_views_count"));
+        publication.setHeader(rs.getString("publication_header"));
+        publication.setExcerpt(rs.getString("publication_excerpt"));
+        publication.setPreviewImagePath(rs.getString("publication_preview_image_path"));
+        publication.setPublishDateTime(rs.getTimestamp("publication_datetime").toLocalDateTime());
+        publication.setKarma(rs.getInt("publication_karma"));
+        return publication;
+    }
+
+    private User mapUser(ResultSet rs, int rowNum) throws SQLException {
+        return User.builder()
+                .id(rs.getLong("user_id"))
+                .login(rs.getString("user_login"))
+                .email(rs.getString("user_email"))
+                .karma(rs.getShort("user_karma"))
+                .build();
+    }
+}
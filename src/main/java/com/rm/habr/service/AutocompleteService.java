@@ -0,0 +1,75 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.Suggestion;
+import com.rm.habr.repository.GenreRepository;
+import com.rm.habr.repository.PublicationRepository;
+import com.rm.habr.repository.TagRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/*автодополнение тэгов, жанров и заголовков публикаций из индексов в памяти, без запросов в БД*/
+@Service
+@Slf4j
+public class AutocompleteService {
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private final PublicationRepository publicationRepository;
+    private final GenreRepository genreRepository;
+    private final TagRepository tagRepository;
+
+    private final PrefixIndex tags = new PrefixIndex();
+    private final PrefixIndex genres = new PrefixIndex();
+    private final PrefixIndex headers = new PrefixIndex();
+
+    public AutocompleteService(PublicationRepository publicationRepository,
+                               GenreRepository genreRepository,
+                               TagRepository tagRepository) {
+        this.publicationRepository = publicationRepository;
+        this.genreRepository = genreRepository;
+        this.tagRepository = tagRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndexes() {
+        refreshDictionaries();
+        headers.replaceAll(publicationRepository.findAllHeaders());
+        log.info("autocomplete indexes are built");
+    }
+
+    /*тэги и жанры меняются только в БД, поэтому перечитываются вместе со справочниками*/
+    @Scheduled(initialDelayString = "${dictionary-refresh-interval-ms:600000}",
+            fixedDelayString = "${dictionary-refresh-interval-ms:600000}")
+    public void refreshDictionaries() {
+        tags.replaceAll(tagRepository.findAll().stream()
+                .map(tag -> new Suggestion(tag.getId(), tag.getName()))
+                .toList());
+        genres.replaceAll(genreRepository.findAll().stream()
+                .map(genre -> new Suggestion(genre.getId(), genre.getName()))
+                .toList());
+    }
+
+    public List<Suggestion> suggestTags(String prefix) {
+        return tags.find(prefix, MAX_SUGGESTIONS);
+    }
+
+    public List<Suggestion> suggestGenres(String prefix) {
+        return genres.find(prefix, MAX_SUGGESTIONS);
+    }
+
+    public List<Suggestion> suggestHeaders(String prefix) {
+        return headers.find(prefix, MAX_SUGGESTIONS);
+    }
+
+    public void putHeader(long publicationId, String header) {
+        headers.put(publicationId, header);
+    }
+
+    public void removeHeader(long publicationId) {
+        headers.remove(publicationId);
+    }
+}
@@ -0,0 +1,182 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.UploadSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/*
+ * Загрузка картинок по частям. Каждая часть дописывается в конец временного файла через FileChannel прямо из тела
+ * запроса, без буферизации всего файла. Клиент отправляет часть с offset, равным уже подтвержденному размеру,
+ * поэтому после обрыва продолжает с последнего подтвержденного offset. Когда записан весь файл, сверяется sha-256
+ * и файл переносится в хранилище. Незавершенные загрузки удаляются через upload-expire-ms.
+ */
+@Service
+@Slf4j
+public class ChunkedUploadService {
+    private final FileStorageService fileStorageService;
+    private final long maxSize;
+    private final Duration expireAfter;
+    private final ConcurrentHashMap<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(FileStorageService fileStorageService,
+                                @Value("${upload-max-size-bytes:20971520}") long maxSize,
+                                @Value("${upload-expire-ms:86400000}") long expireMs) {
+        this.fileStorageService = fileStorageService;
+        this.maxSize = maxSize;
+        this.expireAfter = Duration.ofMillis(expireMs);
+    }
+
+    public UploadSession start(long userId, String fileName, long size, String sha256) throws IOException {
+        if (size <= 0 || size > maxSize) {
+            throw new IllegalArgumentException("Размер файла должен быть от 1 до " + maxSize + " байт");
+        }
+        if (sha256 == null || !sha256.matches("[0-9a-fA-F]{64}")) {
+            throw new IllegalArgumentException("Нужна контрольная сумма sha-256 в hex");
+        }
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), userId, fileName, size,
+                sha256.toLowerCase(), fileStorageService.createTempFile());
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    /*загрузка доступна только тому, кто ее начал*/
+    public Optional<UploadSession> find(String uploadId, long userId) {
+        return Optional.ofNullable(sessions.get(uploadId)).filter(session -> session.getUserId() == userId);
+    }
+
+    /*путь в хранилище целиком загруженного и проверенного файла*/
+    public Optional<String> findFilePath(String uploadId, long userId) {
+        return find(uploadId, userId).map(UploadSession::getFilePath);
+    }
+
+    /*
+     * Пути файлов завершенных, но еще не удаленных загрузок: их uploadId еще можно передать в форму публикации,
+     * поэтому сборщик хранилища их не трогает
+     */
+    public Set<String> getFilePaths() {
+        return sessions.values().stream()
+                .map(UploadSession::getFilePath)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    /*
+     * Дописывает часть, если offset совпадает с уже записанным размером. Сверка идет под блокировкой загрузки,
+     * поэтому из двух одновременных частей с одним offset записывается одна. При несовпадении ничего не пишет
+     * и возвращает false, клиент продолжает с текущего offset.
+     */
+    public boolean append(UploadSession session, long offset, InputStream chunk) throws IOException {
+        synchronized (session) {
+            if (sessions.get(session.getId()) != session) {
+                throw new IllegalStateException("Загрузка устарела, начните ее заново");
+            }
+            if (session.getFilePath() != null || offset != session.getOffset()) {
+                return false;
+            }
+            long written = 0;
+            try (FileChannel channel = FileChannel.open(session.getTmpFile(), StandardOpenOption.WRITE)) {
+                ReadableByteChannel in = Channels.newChannel(chunk);
+                long limit = session.getSize() - offset;
+                long transferred;
+                // transferFrom пишет по позиции и останавливается, когда тело запроса закончилось
+                while (written < limit
+                        && (transferred = channel.transferFrom(in, offset + written, limit - written)) > 0) {
+                    written += transferred;
+                }
+                if (written == limit && in.read(ByteBuffer.allocate(1)) >= 0) {
+                    channel.truncate(offset);
+                    throw new IllegalArgumentException("Часть выходит за объявленный размер файла");
+                }
+                // подтверждаем только то, что реально на диске
+                channel.force(false);
+            } catch (IOException e) {
+                // оборванная часть могла записаться наполовину: она не подтверждена, клиент пришлет ее заново
+                truncate(session);
+                throw e;
+            }
+            session.setOffset(offset + written);
+            session.setUpdatedAt(Instant.now());
+            if (session.getOffset() == session.getSize()) {
+                complete(session);
+            }
+            return true;
+        }
+    }
+
+    private void complete(UploadSession session) throws IOException {
+        String actual = sha256(session);
+        if (!actual.equals(session.getSha256())) {
+            discard(session);
+            throw new IllegalStateException("Контрольная сумма не совпала, загрузите файл заново");
+        }
+        session.setFilePath(fileStorageService.store(session.getTmpFile(), actual, session.getFileName()));
+        log.info("chunked upload id={} stored as {}", session.getId(), session.getFilePath());
+    }
+
+    private static String sha256(UploadSession session) throws IOException {
+        try (FileChannel channel = FileChannel.open(session.getTmpFile(), StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void truncate(UploadSession session) {
+        try (FileChannel channel = FileChannel.open(session.getTmpFile(), StandardOpenOption.WRITE)) {
+            channel.truncate(session.getOffset());
+        } catch (IOException e) {
+            log.warn("could not truncate upload id={}", session.getId(), e);
+        }
+    }
+
+    private void discard(UploadSession session) throws IOException {
+        sessions.remove(session.getId());
+        Files.deleteIfExists(session.getTmpFile());
+    }
+
+    @Scheduled(fixedDelayString = "${upload-expire-ms:86400000}")
+    public void discardExpired() {
+        Instant expiredBefore = Instant.now().minus(expireAfter);
+        for (UploadSession session : sessions.values()) {
+            // под блокировкой загрузки: файл не удаляется посреди записи части, а часть не пишется в удаленный файл
+            synchronized (session) {
+                if (session.getUpdatedAt().isBefore(expiredBefore)) {
+                    try {
+                        discard(session);
+                    } catch (IOException e) {
+                        log.warn("could not delete expired upload id={}", session.getId(), e);
+                    }
+                }
+            }
+        }
+    }
+}
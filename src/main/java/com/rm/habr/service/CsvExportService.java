@@ -0,0 +1,93 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.ExportTable;
+import com.rm.habr.repository.CommentRepository;
+import com.rm.habr.repository.PublicationRepository;
+import com.rm.habr.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+
+/*
+ * Полная выгрузка таблиц в CSV: строки читаются из БД курсором по export-fetch-size и сразу пишутся в поток,
+ * поэтому память не зависит от размера таблицы.
+ */
+@Service
+@Slf4j
+public class CsvExportService {
+    private final PublicationRepository publicationRepository;
+    private final CommentRepository commentRepository;
+    private final UserRepository userRepository;
+    private final int fetchSize;
+
+    public CsvExportService(PublicationRepository publicationRepository,
+                            CommentRepository commentRepository,
+                            UserRepository userRepository,
+                            @Value("${export-fetch-size:1000}") int fetchSize) {
+        this.publicationRepository = publicationRepository;
+        this.commentRepository = commentRepository;
+        this.userRepository = userRepository;
+        this.fetchSize = fetchSize;
+    }
+
+    public long export(ExportTable table, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        ResultSetExtractor<Long> csvWriter = rs -> {
+            try {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnsCount = metaData.getColumnCount();
+                for (int i = 1; i <= columnsCount; i++) {
+                    writeValue(writer, metaData.getColumnLabel(i), i == 1);
+                }
+                writer.write("\r\n");
+                long rows = 0;
+                while (rs.next()) {
+                    for (int i = 1; i <= columnsCount; i++) {
+                        writeValue(writer, rs.getString(i), i == 1);
+                    }
+                    writer.write("\r\n");
+                    rows++;
+                }
+                return rows;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+
+        long rows = switch (table) {
+            case PUBLICATIONS -> publicationRepository.exportAll(fetchSize, csvWriter);
+            case COMMENTS -> commentRepository.exportAll(fetchSize, csvWriter);
+            case USERS -> userRepository.exportAll(fetchSize, csvWriter);
+        };
+        writer.flush();
+        log.info("exported {} rows of {}", rows, table.getName());
+        return rows;
+    }
+
+    /*кавычки только там, где без них значение сломает строку; null - пустое значение*/
+    private static void writeValue(Writer writer, String value, boolean first) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(value);
+        }
+    }
+}
@@ -1,72 +1,197 @@
 package com.rm.habr.service;
 
 import com.rm.habr.config.Config;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import com.rm.habr.service.storage.BlobStorage;
+import com.rm.habr.service.storage.LocalBlobCache;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.annotation.PostConstruct;
-import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 import java.util.stream.Stream;
 
 @Service
+@Slf4j
 public class FileStorageService {
+    /*каталог для загрузок, которые еще пишутся*/
+    private static final String TMP_DIR = "tmp";
+
     private final Path root;
+    private final BlobStorage blobStorage;
+    private final LocalBlobCache blobCache;
+    private final ThumbnailService thumbnailService;
+    private final StorageIndex storageIndex;
 
-    public FileStorageService(Config config) {
+    public FileStorageService(Config config,
+                              BlobStorage blobStorage,
+                              LocalBlobCache blobCache,
+                              ThumbnailService thumbnailService,
+                              StorageIndex storageIndex) {
         root = Paths.get(config.getFileStoragePath());
+        this.blobStorage = blobStorage;
+        this.blobCache = blobCache;
+        this.thumbnailService = thumbnailService;
+        this.storageIndex = storageIndex;
     }
 
+    /*
+     * Файл называется sha-256 своего содержимого и лежит в ab/cd/abcd...: хэш считается, пока загрузка
+     * пишется во временный файл, и если такой файл уже есть, временный удаляется, а возвращается путь существующего.
+     */
     public String save(MultipartFile file) {
         try {
-            String fileName = UUID.randomUUID() + getFileExtensionWithDot(file.getOriginalFilename()).orElse("");
-            String dirName = fileName.substring(0, 2);
-            boolean mkdir = new File(root + "/" + dirName).mkdir();
-            Files.copy(file.getInputStream(), this.root.resolve(dirName + "/" + fileName));
-            return dirName + "/" + fileName;
+            Path tmp = createTempFile();
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                    Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return store(tmp, HexFormat.of().formatHex(digest.digest()), file.getOriginalFilename());
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
         } catch (Exception e) {
             throw new RuntimeException("Could not store the file. Error: " + e.getMessage());
         }
     }
 
+    /*временный файл в file-storage-path: для локального хранилища перенос на место - переименование, а не копирование*/
+    public Path createTempFile() throws IOException {
+        Path tmpDir = Files.createDirectories(root.resolve(TMP_DIR));
+        return Files.createTempFile(tmpDir, "upload-", ".tmp");
+    }
+
+    /*переносит полностью записанный временный файл с уже посчитанным sha-256 на его место в хранилище*/
+    public String store(Path tmp, String hash, String originalFilename) throws IOException {
+        String extension = getFileExtensionWithDot(originalFilename).orElse("");
+        String filePath = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + extension;
+
+        if (blobStorage.stat(filePath).isPresent()) {
+            // время изменения - отметка последнего использования, по нему очистка не трогает свежие файлы
+            blobStorage.touch(filePath);
+            Files.deleteIfExists(tmp);
+            log.info("upload is a duplicate of {}", filePath);
+            return filePath;
+        }
+        long size = Files.size(tmp);
+        blobStorage.put(filePath, tmp);
+        Files.deleteIfExists(tmp);
+        storageIndex.add(filePath, size, hash, Instant.now());
+        thumbnailService.generateAsync(filePath);
+        return filePath;
+    }
+
+    /*удаляет файл вместе с копиями, если его не использовали (не загружали повторно) дольше grace*/
+    public boolean deleteIfUnusedFor(String filename, Duration grace) {
+        try {
+            Optional<BlobStorage.BlobInfo> file = blobStorage.stat(filename);
+            if (file.isEmpty()) {
+                // файла уже нет в хранилище: запись в индексе больше не нужна
+                storageIndex.remove(filename);
+                return false;
+            }
+            if (file.get().lastModified().plus(grace).isAfter(Instant.now())) {
+                return false;
+            }
+            thumbnailService.deleteThumbnails(filename);
+            boolean deleted = blobStorage.delete(filename);
+            blobCache.evict(filename);
+            storageIndex.remove(filename);
+            return deleted;
+        } catch (IOException e) {
+            log.warn("could not delete {}", filename, e);
+            return false;
+        }
+    }
+
+    /*расширение из имени, которое прислал клиент, попадает в путь, поэтому берется только простое*/
     private Optional<String> getFileExtensionWithDot(String filename) {
         return Optional.ofNullable(filename)
                 .filter(f -> f.contains("."))
-                .map(f -> f.substring(filename.lastIndexOf(".")));
+                .map(f -> f.substring(filename.lastIndexOf(".")).toLowerCase())
+                .filter(extension -> extension.matches("\\.[a-z0-9]{1,10}"));
     }
 
-    public Resource load(String filename) {
-        try {
-            Path file = root.resolve(filename);
-            Resource resource = new UrlResource(file.toUri());
-            if (resource.exists() || resource.isReadable()) {
-                return resource;
-            } else {
-                throw new RuntimeException("Could not read the file!");
+    /*локальный файл для ключа хранилища (из удаленного хранилища - через кэш на диске)*/
+    public Optional<Path> load(String filename) {
+        return blobCache.get(filename);
+    }
+
+    /*уменьшенная копия не уже width, если она уже построена, иначе оригинал*/
+    public Optional<Path> load(String filename, int width) {
+        for (String thumbnailKey : thumbnailService.getThumbnailKeys(filename, width)) {
+            Optional<Path> thumbnail = blobCache.get(thumbnailKey);
+            if (thumbnail.isPresent()) {
+                return thumbnail;
             }
-        } catch (MalformedURLException e) {
-            throw new RuntimeException("Error: " + e.getMessage());
         }
+        return load(filename);
     }
 
     public void deleteAll() {
         FileSystemUtils.deleteRecursively(root.toFile());
     }
 
-    public Stream<Path> loadAll() {
+    /*все сохраненные файлы (без временных и уменьшенных копий); поток надо закрыть*/
+    public Stream<BlobStorage.BlobInfo> loadAll() {
         try {
-            return Files.walk(this.root, 1).filter(path -> !path.equals(this.root)).map(this.root::relativize);
+            return blobStorage.list()
+                    .filter(info -> !info.key().startsWith(TMP_DIR + "/") && !info.key().endsWith(".tmp"))
+                    .filter(info -> !thumbnailService.isThumbnail(info.key()));
         } catch (IOException e) {
             throw new RuntimeException("Could not load the files!");
         }
     }
+
+    /*дополняет индекс файлами, сохраненными до его появления; для файлов со старыми именами хэш считается заново*/
+    public void indexExisting() throws IOException {
+        List<StorageIndex.Entry> entries = new ArrayList<>();
+        try (Stream<BlobStorage.BlobInfo> files = loadAll()) {
+            for (BlobStorage.BlobInfo file : (Iterable<BlobStorage.BlobInfo>) files::iterator) {
+                String fileName = file.key().substring(file.key().lastIndexOf('/') + 1);
+                String hash;
+                if (fileName.matches("[0-9a-f]{64}(\\..*)?")) {
+                    hash = fileName.substring(0, 64);
+                } else {
+                    Optional<Path> local = blobCache.get(file.key());
+                    if (local.isEmpty()) {
+                        // удален во время обхода
+                        continue;
+                    }
+                    hash = sha256(local.get());
+                }
+                entries.add(new StorageIndex.Entry(file.key(), file.size(), hash, file.lastModified()));
+            }
+        }
+        storageIndex.rebuild(entries);
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
\ No newline at end of file
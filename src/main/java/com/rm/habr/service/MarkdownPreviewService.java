@@ -0,0 +1,102 @@
+package com.rm.habr.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+ * Предпросмотр markdown в формах публикации.
+ * Документ режется на блоки верхнего уровня (по пустым строкам вне блоков кода),
+ * html каждого блока кэшируется по хэшу его текста, так что при наборе перерендеривается только измененный блок.
+ * Ссылки вида [текст][метка] разрешаются по определениям [метка]: url из любого места документа,
+ * поэтому документ с такими определениями рендерится целиком, как при сохранении.
+ */
+@Service
+public class MarkdownPreviewService {
+    private static final int MAX_CACHED_BLOCKS = 10_000;
+    private static final Pattern LINK_REFERENCE_DEFINITION = Pattern.compile("^ {0,3}\\[[^\\]]+]:", Pattern.MULTILINE);
+    private static final Pattern LIST_ITEM = Pattern.compile("^ {0,3}([-*+]|\\d{1,9}[.)])(\\s.*)?$");
+
+    private final MarkdownService markdownService;
+    private final Map<String, String> renderedBlocks = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_CACHED_BLOCKS;
+                }
+            });
+
+    public MarkdownPreviewService(MarkdownService markdownService) {
+        this.markdownService = markdownService;
+    }
+
+    public String getPreviewHtml(String content) {
+        if (LINK_REFERENCE_DEFINITION.matcher(content).find()) {
+            return markdownService.getHtmlContent(content);
+        }
+        StringBuilder html = new StringBuilder();
+        for (String block : splitBlocks(content)) {
+            String blockHash = markdownService.hash(block);
+            String blockHtml = renderedBlocks.get(blockHash);
+            if (blockHtml == null) {
+                blockHtml = markdownService.getHtmlContent(block);
+                renderedBlocks.put(blockHash, blockHtml);
+            }
+            html.append(blockHtml);
+        }
+        return html.toString();
+    }
+
+    /*
+     * Строки с отступом после пустой строки остаются в текущем блоке (продолжение списка или код с отступом),
+     * как и следующий пункт списка: пункты через пустую строку - один "свободный" список, а не несколько.
+     */
+    static List<String> splitBlocks(String content) {
+        List<String> blocks = new ArrayList<>();
+        StringBuilder block = new StringBuilder();
+        String openFence = null;
+        boolean afterBlankLine = false;
+
+        for (String line : content.split("\r?\n", -1)) {
+            String trimmed = line.stripLeading();
+            if (openFence == null) {
+                if (line.isBlank()) {
+                    afterBlankLine = true;
+                    continue;
+                }
+                boolean isContinuation = line.startsWith(" ") || line.startsWith("\t")
+                        || isListItem(line) && isListItem(block);
+                if (afterBlankLine && !isContinuation && block.length() > 0) {
+                    blocks.add(block.toString());
+                    block.setLength(0);
+                } else if (afterBlankLine && block.length() > 0) {
+                    block.append('\n');
+                }
+                afterBlankLine = false;
+                if (trimmed.startsWith("```") || trimmed.startsWith("~~~")) {
+                    openFence = trimmed.substring(0, 3);
+                }
+            } else if (trimmed.startsWith(openFence)) {
+                openFence = null;
+            }
+            block.append(line).append('\n');
+        }
+        if (block.length() > 0) {
+            blocks.add(block.toString());
+        }
+        return blocks;
+    }
+
+    private static boolean isListItem(CharSequence text) {
+        int lineEnd = 0;
+        while (lineEnd < text.length() && text.charAt(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        return LIST_ITEM.matcher(text.subSequence(0, lineEnd)).matches();
+    }
+}
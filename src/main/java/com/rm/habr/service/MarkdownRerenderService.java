@@ -0,0 +1,44 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.Publication;
+import com.rm.habr.repository.PublicationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/*фоновый перерендер публикаций, сохраненных другой версией рендера markdown или еще без отрывка для ленты*/
+@Service
+@Slf4j
+public class MarkdownRerenderService {
+    private static final int BATCH_SIZE = 100;
+
+    private final PublicationRepository publicationRepository;
+    private final MarkdownService markdownService;
+
+    public MarkdownRerenderService(PublicationRepository publicationRepository, MarkdownService markdownService) {
+        this.publicationRepository = publicationRepository;
+        this.markdownService = markdownService;
+    }
+
+    @Scheduled(initialDelayString = "${markdown-rerender-initial-delay-ms:10000}",
+            fixedDelayString = "${markdown-rerender-interval-ms:3600000}")
+    public void rerenderOutdated() {
+        String rendererVersion = markdownService.getRendererVersion();
+        int rerendered = 0;
+        List<Publication> batch;
+        do {
+            batch = publicationRepository.findWithOutdatedRender(rendererVersion, BATCH_SIZE);
+            for (Publication publication : batch) {
+                publicationRepository.updateRenderedContent(publication.getId(),
+                        markdownService.render(publication.getContent()));
+            }
+            rerendered += batch.size();
+        } while (batch.size() == BATCH_SIZE);
+
+        if (rerendered > 0) {
+            log.info("rerendered {} publications with renderer version {}", rerendered, rendererVersion);
+        }
+    }
+}
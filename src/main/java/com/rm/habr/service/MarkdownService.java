@@ -1,6 +1,6 @@
 package com.rm.habr.service;
 
-import com.rm.habr.model.Publication;
+import com.rm.habr.model.RenderedContent;
 import org.commonmark.Extension;
 import org.commonmark.ext.gfm.strikethrough.StrikethroughExtension;
 import org.commonmark.ext.gfm.tables.TablesExtension;
@@ -8,23 +8,75 @@ import org.commonmark.ext.ins.InsExtension;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
+import org.commonmark.renderer.text.TextContentRenderer;
 import org.springframework.stereotype.Service;
-import org.springframework.ui.Model;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class MarkdownService {
+    public static final int EXCERPT_LENGTH = 300;
+    /*увеличить, если поменялись настройки рендера, чтобы фоновая задача перерендерила все публикации*/
+    private static final int RENDERER_REVISION = 1;
 
-    public String getHtmlContent(Publication publication) {
-        List<Extension> extensions = List.of(
-                TablesExtension.create(),
-                StrikethroughExtension.create(),
-                InsExtension.create()
-        );
-        Parser parser = Parser.builder().extensions(extensions).build();
-        Node document = parser.parse(publication.getContent());
-        HtmlRenderer htmlRenderer = HtmlRenderer.builder().extensions(extensions).build();
-        return htmlRenderer.render(document);
+    private static final List<Extension> EXTENSIONS = List.of(
+            TablesExtension.create(),
+            StrikethroughExtension.create(),
+            InsExtension.create()
+    );
+
+    /*Parser и HtmlRenderer потокобезопасны, поэтому создаются один раз*/
+    private final Parser parser = Parser.builder().extensions(EXTENSIONS).build();
+    private final HtmlRenderer htmlRenderer = HtmlRenderer.builder().extensions(EXTENSIONS).build();
+    private final TextContentRenderer textRenderer = TextContentRenderer.builder().build();
+    private final String rendererVersion = computeRendererVersion();
+
+    public RenderedContent render(String content) {
+        Node document = parser.parse(content);
+        return new RenderedContent(htmlRenderer.render(document),
+                getExcerpt(document),
+                hash(content),
+                rendererVersion);
+    }
+
+    public String getHtmlContent(String content) {
+        return htmlRenderer.render(parser.parse(content));
+    }
+
+    public String getRendererVersion() {
+        return rendererVersion;
+    }
+
+    /*короткий текстовый отрывок для карточки в ленте*/
+    private String getExcerpt(Node document) {
+        String text = textRenderer.render(document)
+                .replaceAll("\\s+", " ")
+                .strip();
+        if (text.length() <= EXCERPT_LENGTH) {
+            return text;
+        }
+        return text.substring(0, EXCERPT_LENGTH - 1).stripTrailing() + "…";
+    }
+
+    public String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static String computeRendererVersion() {
+        String extensions = EXTENSIONS.stream()
+                .map(extension -> extension.getClass().getSimpleName())
+                .collect(Collectors.joining(","));
+        return "commonmark-" + Parser.class.getPackage().getImplementationVersion()
+                + ":" + extensions + ":" + RENDERER_REVISION;
     }
 }
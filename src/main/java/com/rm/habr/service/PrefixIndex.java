@@ -0,0 +1,93 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.Suggestion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/*
+ * Префиксный индекс для автодополнения.
+ * Ключ - нормализованный текст, начиная с каждого слова, плюс id; поиск по префиксу - это диапазон в skip list,
+ * поэтому и чтение, и добавление/удаление одной записи идут за логарифм без блокировок читателей.
+ */
+public class PrefixIndex {
+    private static final char ID_SEPARATOR = '\u0000';
+
+    private final ConcurrentSkipListMap<String, Suggestion> entries = new ConcurrentSkipListMap<>();
+    private final Map<Long, List<String>> keysById = new ConcurrentHashMap<>();
+
+    /*сначала добавляются новые ключи, потом удаляются устаревшие, чтобы читатели не видели запись пропавшей*/
+    public synchronized void put(long id, String text) {
+        Suggestion suggestion = new Suggestion(id, text);
+        List<String> keys = keys(id, text);
+        keys.forEach(key -> entries.put(key, suggestion));
+
+        List<String> oldKeys = keysById.put(id, keys);
+        if (oldKeys != null) {
+            oldKeys.stream()
+                    .filter(oldKey -> !keys.contains(oldKey))
+                    .forEach(entries::remove);
+        }
+    }
+
+    public synchronized void remove(long id) {
+        List<String> keys = keysById.remove(id);
+        if (keys != null) {
+            keys.forEach(entries::remove);
+        }
+    }
+
+    public synchronized void replaceAll(List<Suggestion> suggestions) {
+        Set<Long> ids = suggestions.stream().map(Suggestion::getId).collect(Collectors.toSet());
+        new ArrayList<>(keysById.keySet()).stream()
+                .filter(id -> !ids.contains(id))
+                .forEach(this::remove);
+        suggestions.forEach(suggestion -> put(suggestion.getId(), suggestion.getText()));
+    }
+
+    public List<Suggestion> find(String prefix, int limit) {
+        String normalizedPrefix = normalize(prefix);
+        if (normalizedPrefix.isEmpty()) {
+            return List.of();
+        }
+
+        // одна запись может совпасть по нескольким словам, поэтому убираем повторы по id
+        Map<Long, Suggestion> found = new LinkedHashMap<>();
+        for (Suggestion suggestion : entries.subMap(normalizedPrefix, normalizedPrefix + Character.MAX_VALUE).values()) {
+            found.putIfAbsent(suggestion.getId(), suggestion);
+            if (found.size() == limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    private static List<String> keys(long id, String text) {
+        String normalized = normalize(text);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < normalized.length(); i++) {
+            boolean isWordStart = i == 0 || normalized.charAt(i - 1) == ' ';
+            if (isWordStart && normalized.charAt(i) != ' ') {
+                keys.add(normalized.substring(i) + ID_SEPARATOR + id);
+            }
+        }
+        return keys;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.toLowerCase(Locale.ROOT)
+                .replace('ё', 'е')
+                .replaceAll("\\s+", " ")
+                .strip();
+    }
+}
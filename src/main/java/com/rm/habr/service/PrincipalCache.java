@@ -0,0 +1,58 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.Principal;
+import com.rm.habr.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Пользователи сессий для проверок прав: id -> (существует ли, логин, администратор ли) на principal-cache-ttl-ms.
+ * Отсутствующий пользователь тоже кэшируется. При удалении пользователя и назначении администратора
+ * запись сбрасывается сразу, TTL ограничивает устаревание при изменениях в обход UserService.
+ */
+@Service
+public class PrincipalCache {
+    private final UserRepository userRepository;
+    private final Duration ttl;
+    private final ConcurrentMap<Long, CachedPrincipal> principals = new ConcurrentHashMap<>();
+
+    public PrincipalCache(UserRepository userRepository,
+                          @Value("${principal-cache-ttl-ms:60000}") long ttlMs) {
+        this.userRepository = userRepository;
+        this.ttl = Duration.ofMillis(ttlMs);
+    }
+
+    public Optional<Principal> find(long userId) {
+        CachedPrincipal cached = principals.get(userId);
+        if (cached == null || cached.isExpired()) {
+            // загрузка под блокировкой записи: сброс из invalidate не перетрется значением, прочитанным до него
+            cached = principals.compute(userId, (id, current) -> current == null || current.isExpired()
+                    ? new CachedPrincipal(userRepository.findPrincipalById(id), Instant.now().plus(ttl))
+                    : current);
+        }
+        return cached.principal();
+    }
+
+    public void invalidate(long userId) {
+        principals.remove(userId);
+    }
+
+    /*записи истекших сессий иначе остались бы в памяти навсегда*/
+    @Scheduled(fixedDelayString = "${principal-cache-ttl-ms:60000}")
+    public void removeExpired() {
+        principals.values().removeIf(CachedPrincipal::isExpired);
+    }
+
+    private record CachedPrincipal(Optional<Principal> principal, Instant expiresAt) {
+        boolean isExpired() {
+            return expiresAt.isBefore(Instant.now());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.PublicationFilter;
+import com.rm.habr.repository.PublicationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Инвертированный индекс для фильтрации ленты: для каждого тэга и жанра - сжатый bitmap id публикаций.
+ * Фильтр по нескольким тэгам/жанрам - это пересечение (AND) или объединение (OR) bitmap'ов вместо join'ов в БД.
+ * Bitmap'ы не меняются после публикации в поле: запись копирует только затронутые bitmap'ы и подменяет карту целиком.
+ * Id публикаций хранятся как int, для bigserial этого хватает с большим запасом.
+ * Лента фильтра идет по убыванию id, то есть в порядке добавления на сайт, а не по publication_datetime,
+ * как основная лента: импортированные публикации со старыми датами получают новые id и окажутся в начале.
+ */
+@Service
+@Slf4j
+public class PublicationFilterIndex {
+    private final PublicationRepository publicationRepository;
+
+    private volatile Map<Long, RoaringBitmap> publicationsByTag = Map.of();
+    private volatile Map<Long, RoaringBitmap> publicationsByGenre = Map.of();
+
+    public PublicationFilterIndex(PublicationRepository publicationRepository) {
+        this.publicationRepository = publicationRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void build() {
+        Map<Long, RoaringBitmap> byTag = new HashMap<>();
+        Map<Long, RoaringBitmap> byGenre = new HashMap<>();
+        publicationRepository.forEachTagLink((publicationId, tagId) ->
+                byTag.computeIfAbsent(tagId, id -> new RoaringBitmap()).add(toInt(publicationId)));
+        publicationRepository.forEachGenreLink((publicationId, genreId) ->
+                byGenre.computeIfAbsent(genreId, id -> new RoaringBitmap()).add(toInt(publicationId)));
+        byTag.values().forEach(RoaringBitmap::runOptimize);
+        byGenre.values().forEach(RoaringBitmap::runOptimize);
+
+        publicationsByTag = byTag;
+        publicationsByGenre = byGenre;
+        log.info("publication filter index is built: {} tags, {} genres", byTag.size(), byGenre.size());
+    }
+
+    public synchronized void add(long publicationId, Collection<Long> genreIds, Collection<Long> tagIds) {
+        publicationsByGenre = withPublication(publicationsByGenre, genreIds, toInt(publicationId));
+        publicationsByTag = withPublication(publicationsByTag, tagIds, toInt(publicationId));
+    }
+
+    public synchronized void remove(long publicationId) {
+        publicationsByGenre = withoutPublication(publicationsByGenre, toInt(publicationId));
+        publicationsByTag = withoutPublication(publicationsByTag, toInt(publicationId));
+    }
+
+    /*
+     * До limit id публикаций, подходящих под фильтр, меньших beforeId (null - с самого нового), по убыванию id.
+     * Bitmap сначала обрезается по курсору (операция над контейнерами, а не над каждым id),
+     * поэтому глубокая страница стоит столько же, сколько первая.
+     */
+    public long[] findIds(PublicationFilter filter, Long beforeId, int limit) {
+        RoaringBitmap matched = match(filter);
+        if (beforeId != null) {
+            matched = RoaringBitmap.and(matched, RoaringBitmap.bitmapOfRange(0, Math.max(0, beforeId)));
+        }
+        long[] ids = new long[Math.min(limit, matched.getCardinality())];
+        IntIterator iterator = matched.getReverseIntIterator();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = iterator.next();
+        }
+        return ids;
+    }
+
+    private RoaringBitmap match(PublicationFilter filter) {
+        Map<Long, RoaringBitmap> byTag = publicationsByTag;
+        Map<Long, RoaringBitmap> byGenre = publicationsByGenre;
+
+        List<RoaringBitmap> bitmaps = new ArrayList<>();
+        filter.getTagIds().forEach(tagId -> bitmaps.add(byTag.getOrDefault(tagId, new RoaringBitmap())));
+        filter.getGenreIds().forEach(genreId -> bitmaps.add(byGenre.getOrDefault(genreId, new RoaringBitmap())));
+        if (bitmaps.isEmpty()) {
+            return new RoaringBitmap();
+        }
+        if (!filter.isMatchAll()) {
+            return RoaringBitmap.or(bitmaps.iterator());
+        }
+
+        // пересекаем начиная с самого маленького bitmap'а, так промежуточный результат сразу минимален
+        bitmaps.sort((a, b) -> Integer.compare(a.getCardinality(), b.getCardinality()));
+        RoaringBitmap result = bitmaps.get(0).clone();
+        for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+            result.and(bitmaps.get(i));
+        }
+        return result;
+    }
+
+    private static Map<Long, RoaringBitmap> withPublication(Map<Long, RoaringBitmap> index,
+                                                            Collection<Long> keys, int publicationId) {
+        Map<Long, RoaringBitmap> copy = new HashMap<>(index);
+        for (Long key : keys) {
+            RoaringBitmap bitmap = copy.containsKey(key) ? copy.get(key).clone() : new RoaringBitmap();
+            bitmap.add(publicationId);
+            copy.put(key, bitmap);
+        }
+        return copy;
+    }
+
+    private static Map<Long, RoaringBitmap> withoutPublication(Map<Long, RoaringBitmap> index, int publicationId) {
+        Map<Long, RoaringBitmap> copy = new HashMap<>(index);
+        index.forEach((key, bitmap) -> {
+            if (bitmap.contains(publicationId)) {
+                RoaringBitmap changed = bitmap.clone();
+                changed.remove(publicationId);
+                copy.put(key, changed);
+            }
+        });
+        return copy;
+    }
+
+    private static int toInt(long publicationId) {
+        return Math.toIntExact(publicationId);
+    }
+}
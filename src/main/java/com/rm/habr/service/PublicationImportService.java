@@ -0,0 +1,255 @@
+package com.rm.habr.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rm.habr.dto.ImportPublicationDto;
+import com.rm.habr.model.*;
+import com.rm.habr.repository.PublicationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Импорт архива публикаций из NDJSON (одна публикация в строке).
+ * Файл читается построчно и пишется пакетами по publication-import-batch-size прямо в COPY, в памяти только текущая строка.
+ * Битая строка пропускается, упавший пакет откатывается целиком, импорт продолжается со следующего.
+ * Если оборвалось само чтение файла, импорт останавливается, а в отчете остается строка, с которой его продолжить.
+ */
+@Service
+@Slf4j
+public class PublicationImportService {
+    private final PublicationRepository publicationRepository;
+    private final MarkdownService markdownService;
+    private final AutocompleteService autocompleteService;
+    private final PublicationFilterIndex publicationFilterIndex;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    /*одновременно идет только один импорт*/
+    private final ReentrantLock importLock = new ReentrantLock();
+    private volatile ImportReport report;
+
+    public PublicationImportService(PublicationRepository publicationRepository,
+                                    MarkdownService markdownService,
+                                    AutocompleteService autocompleteService,
+                                    PublicationFilterIndex publicationFilterIndex,
+                                    ObjectMapper objectMapper,
+                                    @Value("${publication-import-batch-size:1000}") int batchSize) {
+        this.publicationRepository = publicationRepository;
+        this.markdownService = markdownService;
+        this.autocompleteService = autocompleteService;
+        this.publicationFilterIndex = publicationFilterIndex;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    /*строки до fromLine пропускаются: так импорт продолжается с места, где прервалось чтение (resumeFromLine отчета)*/
+    public ImportReport importNdjson(InputStream ndjson, long fromLine) throws IOException {
+        if (!importLock.tryLock()) {
+            throw new IllegalStateException("Импорт уже выполняется");
+        }
+        try {
+            ImportReport current = new ImportReport();
+            report = current;
+            NdjsonLines lines = new NdjsonLines(
+                    new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8)), fromLine, current);
+            long firstLine = 1;
+            try {
+                for (; lines.hasMoreLines(); firstLine = lines.getLineNumber() + 1) {
+                    writeBatch(lines.nextBatch(), firstLine, lines, current);
+                }
+            } catch (UncheckedIOException e) {
+                // пакет, в котором оборвалось чтение, откатился; все предыдущие уже сохранены
+                log.warn("publication import stopped reading at line {}, resume from line {}",
+                        lines.getLineNumber(), firstLine, e);
+                synchronized (current) {
+                    current.setResumeFromLine(firstLine);
+                    current.addError("чтение прервано на строке " + lines.getLineNumber()
+                            + ", продолжить импорт можно со строки " + firstLine + ": " + e.getCause().getMessage());
+                }
+            }
+            synchronized (current) {
+                current.setFinishedAt(LocalDateTime.now());
+            }
+            log.info("publication import finished: imported={} failed={}",
+                    current.getImportedCount(), current.getFailedCount());
+            return getReport();
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    /*ход текущего или последнего импорта, null если импорта еще не было*/
+    public ImportReport getReport() {
+        ImportReport current = report;
+        if (current == null) {
+            return null;
+        }
+        synchronized (current) {
+            return current.copy();
+        }
+    }
+
+    private void writeBatch(Batch batch, long firstLine, NdjsonLines lines, ImportReport current) {
+        try {
+            List<ImportedPublication> imported = publicationRepository.insertAll(batch,
+                    publication -> markdownService.render(publication.getContent()));
+            for (ImportedPublication publication : imported) {
+                autocompleteService.putHeader(publication.getId(), publication.getHeader());
+                publicationFilterIndex.add(publication.getId(), publication.getGenreIds(), publication.getTagIds());
+            }
+            synchronized (current) {
+                current.setImportedCount(current.getImportedCount() + imported.size());
+                current.setBatchesCount(current.getBatchesCount() + 1);
+            }
+        } catch (DataAccessException e) {
+            // дочитать строки упавшего пакета, чтобы следующий пакет начался с его границы
+            batch.forEachRemaining(publication -> {
+            });
+            long lastLine = lines.getLineNumber();
+            log.warn("publication import batch (lines {}-{}) failed", firstLine, lastLine, e);
+            synchronized (current) {
+                current.setFailedCount(current.getFailedCount() + batch.getCount());
+                current.setBatchesCount(current.getBatchesCount() + 1);
+                current.setFailedBatchesCount(current.getFailedBatchesCount() + 1);
+                current.addError("строки " + firstLine + "-" + lastLine + ": " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        log.info("publication import progress: lines={} imported={} failed={}",
+                current.getLinesRead(), current.getImportedCount(), current.getFailedCount());
+    }
+
+    private Publication toPublication(ImportPublicationDto dto) {
+        if (dto.userId == null || dto.header == null || dto.content == null) {
+            throw new IllegalArgumentException("обязательны userId, header и content");
+        }
+        Publication publication = new Publication();
+        publication.setAuthor(new User(dto.userId));
+        publication.setHeader(dto.header);
+        publication.setContent(dto.content);
+        publication.setPreviewImagePath(dto.previewImagePath);
+        publication.setPublishDateTime(dto.publishDateTime == null ? LocalDateTime.now() : dto.publishDateTime);
+        if (dto.genreIds != null) {
+            publication.setGenres(Arrays.stream(dto.genreIds).map(Genre::new).toList());
+        }
+        if (dto.tagIds != null) {
+            publication.setTags(Arrays.stream(dto.tagIds).map(Tag::new).toList());
+        }
+        return publication;
+    }
+
+    /*
+     * Строки файла по порядку. Пакет - итератор не более чем по batchSize разобранным публикациям,
+     * строки читаются, только когда репозиторий берет следующую публикацию, поэтому в памяти одна строка.
+     * Ошибка чтения выбрасывается как UncheckedIOException.
+     */
+    private class NdjsonLines {
+        private final BufferedReader reader;
+        private final long fromLine;
+        private final ImportReport current;
+        private long lineNumber;
+        private String nextLine;
+        private boolean finished;
+
+        NdjsonLines(BufferedReader reader, long fromLine, ImportReport current) {
+            this.reader = reader;
+            this.fromLine = fromLine;
+            this.current = current;
+        }
+
+        long getLineNumber() {
+            return lineNumber;
+        }
+
+        boolean hasMoreLines() {
+            return peek() != null;
+        }
+
+        Batch nextBatch() {
+            return new Batch(this);
+        }
+
+        /*следующая разобранная публикация или null в конце файла; битые строки попадают в отчет и пропускаются*/
+        Publication nextPublication() {
+            String line;
+            while ((line = peek()) != null) {
+                nextLine = null;
+                lineNumber++;
+                synchronized (current) {
+                    current.setLinesRead(lineNumber);
+                }
+                if (lineNumber < fromLine || line.isBlank()) {
+                    continue;
+                }
+                try {
+                    return toPublication(objectMapper.readValue(line, ImportPublicationDto.class));
+                } catch (JsonProcessingException | IllegalArgumentException e) {
+                    synchronized (current) {
+                        current.setFailedCount(current.getFailedCount() + 1);
+                        current.addError("строка " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+            return null;
+        }
+
+        private String peek() {
+            if (nextLine == null && !finished) {
+                try {
+                    nextLine = reader.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                finished = nextLine == null;
+            }
+            return nextLine;
+        }
+    }
+
+    private class Batch implements Iterator<Publication> {
+        private final NdjsonLines lines;
+        private Publication next;
+        private int count;
+
+        Batch(NdjsonLines lines) {
+            this.lines = lines;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && count < batchSize) {
+                next = lines.nextPublication();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Publication next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Publication publication = next;
+            next = null;
+            count++;
+            return publication;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.rm.habr.service;
+
+import com.rm.habr.repository.PublicationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * Фоновое удаление скрытых публикаций. Комментарии и лайки удаляются пачками по publication-purge-chunk-size,
+ * каждая пачка - отдельная короткая транзакция, поэтому даже обсуждаемая публикация не держит блокировки надолго.
+ */
+@Service
+@Slf4j
+public class PublicationPurgeService {
+    private static final int PUBLICATIONS_PER_RUN = 100;
+
+    private final PublicationRepository publicationRepository;
+    private final FileStorageService fileStorageService;
+    private final int chunkSize;
+    private final Duration imageReleaseGrace;
+
+    public PublicationPurgeService(PublicationRepository publicationRepository,
+                                   FileStorageService fileStorageService,
+                                   @Value("${publication-purge-chunk-size:1000}") int chunkSize,
+                                   @Value("${image-release-grace-ms:3600000}") long imageReleaseGraceMs) {
+        this.publicationRepository = publicationRepository;
+        this.fileStorageService = fileStorageService;
+        this.chunkSize = chunkSize;
+        this.imageReleaseGrace = Duration.ofMillis(imageReleaseGraceMs);
+    }
+
+    @Scheduled(fixedDelayString = "${publication-purge-interval-ms:30000}")
+    public void purgeDeleted() {
+        List<Long> publicationIds = publicationRepository.findDeletedIds(PUBLICATIONS_PER_RUN);
+        for (Long publicationId : publicationIds) {
+            try {
+                purge(publicationId);
+            } catch (DataAccessException e) {
+                // публикация остается скрытой, следующий запуск продолжит с того же места
+                log.warn("failed to purge publication id={}", publicationId, e);
+            }
+        }
+    }
+
+    private void purge(long publicationId) {
+        long comments = 0;
+        int deleted;
+        do {
+            deleted = publicationRepository.purgeComments(publicationId, chunkSize);
+            comments += deleted;
+        } while (deleted == chunkSize);
+
+        long likes = 0;
+        do {
+            deleted = publicationRepository.purgeLikes(publicationId, chunkSize);
+            likes += deleted;
+        } while (deleted == chunkSize);
+
+        Optional<String> previewImagePath = publicationRepository.findPreviewImagePath(publicationId);
+        publicationRepository.purge(publicationId);
+        log.info("purged publication id={} with {} comments and {} likes", publicationId, comments, likes);
+
+        // одна картинка может быть у нескольких публикаций, удаляется вместе с последней ссылкой на нее;
+        // только что загруженный дубликат защищен grace-периодом: его публикация может быть еще не сохранена
+        previewImagePath
+                .filter(path -> publicationRepository.countByPreviewImagePath(path) == 0)
+                .ifPresent(path -> fileStorageService.deleteIfUnusedFor(path, imageReleaseGrace));
+    }
+}
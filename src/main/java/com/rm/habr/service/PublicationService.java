@@ -6,13 +6,21 @@ import com.rm.habr.model.*;
 import com.rm.habr.repository.PublicationRepository;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.ui.Model;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.servlet.http.HttpSession;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
@@ -25,6 +33,12 @@ public class PublicationService {
     private final CommentService commentService;
     private final GenreService genreService;
     private final TagService tagService;
+    private final ViewsCountService viewsCountService;
+    private final TrendingService trendingService;
+    private final AutocompleteService autocompleteService;
+    private final PublicationFilterIndex publicationFilterIndex;
+    private final ThumbnailService thumbnailService;
+    private final ChunkedUploadService chunkedUploadService;
 
 
     public PublicationsPage findAllByPage(Integer page) {
@@ -45,11 +59,12 @@ public class PublicationService {
 
     public void fillGetPublicationModel(long id, HttpSession session, Model model) {
         Publication publication = findById(id);
+        publication.setViewsCount(publication.getViewsCount() + (int) viewsCountService.getPendingViews(id));
         model.addAttribute("publication", publication);
         model.addAttribute("comments", commentService.findCommentsByPublicationId(id));
         incrementViewsCount(id);
 
-        model.addAttribute("htmlContent", markdownService.getHtmlContent(publication));
+        model.addAttribute("htmlContent", getHtmlContent(publication));
         model.addAttribute("newComment", new Comment());
 
         boolean isCanModify = (publication.getAuthor().getId().equals(session.getAttribute("userId")))
@@ -60,6 +75,14 @@ public class PublicationService {
         model.addAttribute("imageEndpoint", "http://localhost:8080/image");
     }
 
+    /*html рендерится при сохранении; на лету только для публикаций, до которых еще не дошел фоновый перерендер*/
+    private String getHtmlContent(Publication publication) {
+        if (publication.getHtmlContent() != null) {
+            return publication.getHtmlContent();
+        }
+        return markdownService.getHtmlContent(publication.getContent());
+    }
+
     public void fillShowPublicationFormModel(Model model) {
         model.addAttribute("publication", new CreatePublicationDto());
         model.addAttribute("genres", genreService.findAll());
@@ -87,14 +110,32 @@ public class PublicationService {
             genres.add(new Genre(genreId));
         }
         publication.setGenres(genres);
-        String pathToSave = fileStorageService.save(publicationDto.previewImage);
+        String pathToSave = getPreviewImagePath(publicationDto, userId);
         publication.setPreviewImagePath(pathToSave);
         log.info("saved publication id={} previewImagePath={}", publication.getId(), publication.getPreviewImagePath());
-        return publicationRepository.insert(publication);
+        long publicationId = publicationRepository.insert(publication, markdownService.render(publication.getContent()));
+        autocompleteService.putHeader(publicationId, publication.getHeader());
+        publicationFilterIndex.add(publicationId, Arrays.asList(publicationDto.genreIds),
+                Arrays.asList(publicationDto.tagIds));
+        return publicationId;
+    }
+
+    /*путь картинки берется только из своей завершенной загрузки, произвольный путь из формы не принимается*/
+    private String getPreviewImagePath(CreatePublicationDto publicationDto, long userId) {
+        if (publicationDto.previewImage != null && !publicationDto.previewImage.isEmpty()) {
+            return fileStorageService.save(publicationDto.previewImage);
+        }
+        if (publicationDto.uploadId != null) {
+            Optional<String> uploadedPath = chunkedUploadService.findFilePath(publicationDto.uploadId, userId);
+            if (uploadedPath.isPresent()) {
+                return uploadedPath.get();
+            }
+        }
+        throw new IllegalArgumentException("Не загружена картинка превью");
     }
 
     public void incrementViewsCount(Long publicationId) {
-        publicationRepository.updateViewsCount(publicationId);
+        viewsCountService.increment(publicationId);
     }
 
     public boolean checkUserLikedPublication(Long publicationId, Long userId) {
@@ -102,11 +143,16 @@ public class PublicationService {
     }
 
     public void updateHeaderAndContentById(Long publicationId, String header, String content) {
-        publicationRepository.updateHeaderAndContentById(publicationId, header, content);
+        publicationRepository.updateHeaderAndContentById(publicationId, header, content,
+                markdownService.render(content));
+        autocompleteService.putHeader(publicationId, header);
     }
 
     public void toggleLike(Long publicationId, HttpSession session) {
         long userId = (long) session.getAttribute("userId");
+        if (!publicationRepository.isVisible(publicationId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Публикация удалена");
+        }
         boolean isLikedByUser = checkUserLikedPublication(publicationId, userId);
 
         if (isLikedByUser) {
@@ -121,51 +167,121 @@ public class PublicationService {
     }
 
     public void addLike(Long publicationId, Long userId) {
+        viewsCountService.flush(publicationId);
         publicationRepository.addLike(publicationId, userId);
     }
 
-    public PublicationsPage findByGenreName(String genreName, Integer page) {
-        PublicationsPage publicationsPage;
+    public PublicationsSlice findByGenreName(String genreName, String cursor) {
+        PublicationCursor publicationCursor = PublicationCursor.decode(cursor).orElse(null);
+        PublicationsSlice publicationsSlice;
         if (genreName.equalsIgnoreCase("Все")) {
-            publicationsPage = publicationRepository.findPage(page);
+            publicationsSlice = publicationRepository.findPage(publicationCursor);
         } else {
-            publicationsPage = publicationRepository.findPageByGenreName(genreName, page);
+            publicationsSlice = publicationRepository.findPageByGenreName(genreName, publicationCursor);
         }
-        return publicationsPage;
+        return publicationsSlice;
     }
 
-    public void fillFindByGenreNameModel(String genreName, Integer page, Model model) {
-        PublicationsPage publicationsPage = findByGenreName(genreName, page);
-        model.addAttribute("publications", publicationsPage.getPublications());
-        model.addAttribute("pagesCount", publicationsPage.getRowsCount() / (PublicationsPage.PAGE_SIZE + 1) + 1);
-        model.addAttribute("currentPage", page);
+    public void fillFindByGenreNameModel(String genreName, String cursor, Model model) {
+        PublicationsSlice publicationsSlice = findByGenreName(genreName, cursor);
+        model.addAttribute("publications", publicationsSlice.getPublications());
+        model.addAttribute("nextCursor", publicationsSlice.getNextCursor());
+        model.addAttribute("baseUrl", UriComponentsBuilder.fromPath("/publications")
+                .queryParam("genre", genreName)
+                .encode()
+                .toUriString());
         model.addAttribute("chosenFilter", genreName);
         model.addAttribute("miniPublications", getBestMiniPublications());
         model.addAttribute("imageEndpoint", "http://localhost:8080/image");
+        model.addAttribute("thumbnailWidths", thumbnailService.getWidths());
     }
 
-    public PublicationsPage findByUserId(Long userId, Integer page) {
-        return publicationRepository.findByUserId(userId, page);
+    public PublicationsSlice findByUserId(Long userId, String cursor) {
+        return publicationRepository.findByUserId(userId, PublicationCursor.decode(cursor).orElse(null));
     }
 
-    public void fillFindByUserIdModel(Long userId, Integer page, Model model) {
-        PublicationsPage publicationsPage = findByUserId(userId, page);
-        model.addAttribute("publications", publicationsPage.getPublications());
-        model.addAttribute("pagesCount", publicationsPage.getRowsCount() / (PublicationsPage.PAGE_SIZE + 1) + 1);
-        model.addAttribute("currentPage", page);
+    public void fillFindByUserIdModel(Long userId, String cursor, Model model) {
+        PublicationsSlice publicationsSlice = findByUserId(userId, cursor);
+        model.addAttribute("publications", publicationsSlice.getPublications());
+        model.addAttribute("nextCursor", publicationsSlice.getNextCursor());
+        model.addAttribute("baseUrl", "/publications/byUser?userId=" + userId);
         model.addAttribute("miniPublications", getBestMiniPublications());
+        model.addAttribute("imageEndpoint", "http://localhost:8080/image");
+        model.addAttribute("thumbnailWidths", thumbnailService.getWidths());
 
         User userById = userService.findUserById(userId);
         model.addAttribute("chosenFilter", userById.getLogin());
     }
 
+    /*курсор фильтра - id последней показанной публикации, лента фильтра упорядочена по убыванию id*/
+    public PublicationsSlice findByFilter(PublicationFilter filter, String cursor) {
+        if (filter.isEmpty()) {
+            return new PublicationsSlice(List.of(), null);
+        }
+        Long beforeId = null;
+        if (cursor != null && cursor.matches("\\d{1,18}")) {
+            beforeId = Long.parseLong(cursor);
+        }
+        long[] ids = publicationFilterIndex.findIds(filter, beforeId, PublicationsSlice.PAGE_SIZE + 1);
+        boolean hasNext = ids.length > PublicationsSlice.PAGE_SIZE;
+        long[] pageIds = hasNext ? Arrays.copyOf(ids, PublicationsSlice.PAGE_SIZE) : ids;
+        String nextCursor = hasNext ? String.valueOf(pageIds[pageIds.length - 1]) : null;
+        return new PublicationsSlice(publicationRepository.findByIds(pageIds), nextCursor);
+    }
+
+    public void fillFindByFilterModel(PublicationFilter filter, String cursor, Model model) {
+        PublicationsSlice publicationsSlice = findByFilter(filter, cursor);
+        model.addAttribute("publications", publicationsSlice.getPublications());
+        model.addAttribute("nextCursor", publicationsSlice.getNextCursor());
+        model.addAttribute("baseUrl", getFilterUrl(filter));
+        model.addAttribute("chosenFilter", getFilterName(filter));
+        model.addAttribute("miniPublications", getBestMiniPublications());
+        model.addAttribute("imageEndpoint", "http://localhost:8080/image");
+        model.addAttribute("thumbnailWidths", thumbnailService.getWidths());
+    }
+
+    private String getFilterUrl(PublicationFilter filter) {
+        String params = Stream.concat(
+                        filter.getTagIds().stream().map(tagId -> "tag=" + tagId),
+                        filter.getGenreIds().stream().map(genreId -> "genre=" + genreId))
+                .collect(Collectors.joining("&"));
+        return "/publications/filter?" + params + "&mode=" + (filter.isMatchAll() ? "and" : "or");
+    }
+
+    private String getFilterName(PublicationFilter filter) {
+        Stream<String> tags = tagService.findAll().stream()
+                .filter(tag -> filter.getTagIds().contains(tag.getId()))
+                .map(tag -> "#" + tag.getName());
+        Stream<String> genres = genreService.findAll().stream()
+                .filter(genre -> filter.getGenreIds().contains(genre.getId()))
+                .map(Genre::getName);
+        return Stream.concat(genres, tags).collect(Collectors.joining(filter.isMatchAll() ? " и " : " или "));
+    }
+
+    public PublicationSearchSlice search(String query, String cursor) {
+        if (query == null || query.isBlank()) {
+            return new PublicationSearchSlice(List.of(), null);
+        }
+        return publicationRepository.search(query.strip(), SearchCursor.decode(cursor).orElse(null));
+    }
+
+    public void fillSearchModel(String query, String cursor, Model model) {
+        PublicationSearchSlice searchSlice = search(query, cursor);
+        model.addAttribute("query", query);
+        model.addAttribute("hits", searchSlice.getHits());
+        model.addAttribute("nextCursor", searchSlice.getNextCursor());
+        model.addAttribute("baseUrl", "/publications/search?q="
+                + URLEncoder.encode(query == null ? "" : query, StandardCharsets.UTF_8));
+        model.addAttribute("miniPublications", getBestMiniPublications());
+    }
 
     public void delete(long id) {
-        //todo подумать, удалять ли изображение или нет
         publicationRepository.delete(id);
+        autocompleteService.removeHeader(id);
+        publicationFilterIndex.remove(id);
     }
 
-    public List<Publication> findBestPublications() {
+    public List<PublicationSummary> findBestPublications() {
         return publicationRepository.findBestPublications();
     }
 
@@ -175,6 +291,6 @@ public class PublicationService {
 
 
     public List<MiniPublication> getBestMiniPublications() {
-        return publicationRepository.getBestMiniPublications();
+        return trendingService.getBestMiniPublications();
     }
 }
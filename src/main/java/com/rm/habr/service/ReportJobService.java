@@ -0,0 +1,141 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.ReportFormat;
+import com.rm.habr.model.ReportJob;
+import com.rm.habr.model.ReportType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Отчеты строятся в отдельном пуле из report-executor-threads потоков с очередью на report-queue-capacity заданий,
+ * сверх этого задание отклоняется (RejectedExecutionException), а не занимает поток tomcat и соединение с БД.
+ * Одинаковые запросы (тип, формат, параметры) получают одно и то же задание, готовый отчет отдается из памяти
+ * еще report-cache-ttl-ms после построения.
+ */
+@Service
+@Slf4j
+public class ReportJobService {
+    private record JobKey(ReportType type, ReportFormat format, Map<String, String> params) {
+    }
+
+    private final ReportService reportService;
+    private final Duration cacheTtl;
+    private final Duration jobTimeout;
+    private final ThreadPoolExecutor executor;
+
+    private final ConcurrentHashMap<JobKey, ReportJob> jobsByKey = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ReportJob> jobsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Future<?>> futures = new ConcurrentHashMap<>();
+
+    public ReportJobService(ReportService reportService,
+                            @Value("${report-executor-threads:2}") int threads,
+                            @Value("${report-queue-capacity:10}") int queueCapacity,
+                            @Value("${report-cache-ttl-ms:300000}") long cacheTtlMs,
+                            @Value("${report-job-timeout-ms:600000}") long jobTimeoutMs) {
+        this.reportService = reportService;
+        this.cacheTtl = Duration.ofMillis(cacheTtlMs);
+        this.jobTimeout = Duration.ofMillis(jobTimeoutMs);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("report-"));
+    }
+
+    /*
+     * Существующее задание для таких же параметров или новое; упавшее или устаревшее задание перезапускается.
+     * В пул задание отправляется вне compute: если очередь полна, новое задание убирается из обеих карт.
+     */
+    public ReportJob submit(ReportType type, ReportFormat format, Map<String, String> params) {
+        JobKey key = new JobKey(type, format, Map.copyOf(params));
+        ReportJob job = jobsByKey.compute(key, (k, existing) -> {
+            if (existing != null && existing.getStatus() != ReportJob.Status.FAILED && !isExpired(existing)) {
+                return existing;
+            }
+            if (existing != null) {
+                jobsById.remove(existing.getId());
+            }
+            ReportJob created = new ReportJob(UUID.randomUUID().toString(), type, format, k.params());
+            jobsById.put(created.getId(), created);
+            return created;
+        });
+        if (job.getStatus() == ReportJob.Status.QUEUED && !futures.containsKey(job.getId())) {
+            try {
+                futures.computeIfAbsent(job.getId(), id -> executor.submit(() -> run(job)));
+            } catch (RejectedExecutionException e) {
+                jobsByKey.remove(key, job);
+                jobsById.remove(job.getId(), job);
+                throw e;
+            }
+        }
+        return job;
+    }
+
+    public Optional<ReportJob> findById(String jobId) {
+        return Optional.ofNullable(jobsById.get(jobId));
+    }
+
+    private void run(ReportJob job) {
+        job.setStatus(ReportJob.Status.RUNNING);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            reportService.export(job.getType(), job.getFormat(), job.getParams(), out);
+            job.setResult(out.toByteArray());
+            job.setStatus(ReportJob.Status.DONE);
+        } catch (Exception e) {
+            log.warn("report job id={} type={} failed", job.getId(), job.getType(), e);
+            job.setError(e.getMessage());
+            job.setStatus(ReportJob.Status.FAILED);
+        } finally {
+            job.setFinishedAt(Instant.now());
+        }
+    }
+
+    private boolean isExpired(ReportJob job) {
+        Instant finishedAt = job.getFinishedAt();
+        return finishedAt != null && finishedAt.plus(cacheTtl).isBefore(Instant.now());
+    }
+
+    /*
+     * Задание, которое не закончилось за report-job-timeout-ms (зависший запрос к БД), прерывается и помечается
+     * упавшим: следующий такой же запрос построит отчет заново, а само оно уйдет из памяти вместе с устаревшими.
+     */
+    @Scheduled(fixedDelayString = "${report-cache-ttl-ms:300000}")
+    public void evictExpired() {
+        Instant startedBefore = Instant.now().minus(jobTimeout);
+        for (ReportJob job : jobsById.values()) {
+            if (job.getFinishedAt() == null && job.getCreatedAt().isBefore(startedBefore)) {
+                Future<?> future = futures.get(job.getId());
+                if (future != null) {
+                    future.cancel(true);
+                }
+                log.warn("report job id={} type={} timed out", job.getId(), job.getType());
+                job.setError("Отчет не построился за отведенное время");
+                job.setStatus(ReportJob.Status.FAILED);
+                job.setFinishedAt(Instant.now());
+            }
+        }
+        jobsByKey.values().removeIf(this::isExpired);
+        jobsById.values().removeIf(this::isExpired);
+        futures.keySet().retainAll(jobsById.keySet());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
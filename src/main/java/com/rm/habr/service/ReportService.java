@@ -1,106 +1,82 @@
 package com.rm.habr.service;
 
-import ch.qos.logback.core.util.FileUtil;
-import com.rm.habr.model.BestUser;
-import com.rm.habr.model.Publication;
-import com.rm.habr.model.User;
+import com.rm.habr.model.ReportFormat;
+import com.rm.habr.model.ReportType;
 import com.rm.habr.repository.PublicationRepository;
 import net.sf.jasperreports.engine.*;
 import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
+import net.sf.jasperreports.engine.export.HtmlExporter;
 import net.sf.jasperreports.engine.export.JRCsvExporter;
 import net.sf.jasperreports.export.SimpleCsvExporterConfiguration;
 import net.sf.jasperreports.export.SimpleExporterInput;
+import net.sf.jasperreports.export.SimpleHtmlExporterOutput;
 import net.sf.jasperreports.export.SimpleWriterExporterOutput;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
-import org.springframework.util.ResourceUtils;
 
-import java.io.*;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
+/*
+ * Шаблоны компилируются один раз при старте, на запрос остается только заполнение и экспорт.
+ * Экспорт пишет прямо в переданный поток (ответ), без временных файлов и копии отчета в byte[].
+ */
 @Service
 public class ReportService {
-    private final Path root = Paths.get("src/main/resources/reports/");
-
     private final PublicationRepository publicationRepository;
 
-    public ReportService(PublicationRepository publicationRepository) {
+    private final Map<ReportType, JasperReport> reports = new EnumMap<>(ReportType.class);
+
+    public ReportService(PublicationRepository publicationRepository) throws IOException, JRException {
         this.publicationRepository = publicationRepository;
+        for (ReportType type : ReportType.values()) {
+            reports.put(type, compile("reports/" + type.getFileName() + ".jrxml"));
+        }
     }
 
-    public byte[] exportGetBestPublicationsReport(String reportFormat)
-            throws IOException, JRException {
-        List<Publication> publications = publicationRepository.findBestPublications();
-        File file = ResourceUtils.getFile("classpath:reports/best_publications.jrxml");
-        JasperReport report = JasperCompileManager.compileReport(file.getAbsolutePath());
-        JRBeanCollectionDataSource dataSource = new JRBeanCollectionDataSource(publications);
-        Map<String, Object> params = new HashMap<>();
-        JasperPrint jasperPrint = JasperFillManager.fillReport(report, params, dataSource);
-        String fileName = "C\\reports\\best_publications" + LocalDateTime.now();
+    public void export(ReportType type, ReportFormat reportFormat, Map<String, String> params, OutputStream out)
+            throws JRException {
+        Collection<?> rows = switch (type) {
+            case BEST_PUBLICATIONS -> publicationRepository.findBestPublications();
+            case BEST_USERS -> publicationRepository.findBestUsers();
+        };
+        export(reports.get(type), rows, new HashMap<>(params), reportFormat, out);
+    }
+
+    private void export(JasperReport report, Collection<?> rows, Map<String, Object> params,
+                        ReportFormat reportFormat, OutputStream out) throws JRException {
+        JasperPrint jasperPrint = JasperFillManager.fillReport(report, params, new JRBeanCollectionDataSource(rows));
 
-        if (reportFormat.equalsIgnoreCase("html")) {
-            fileName += ".html";
-            JasperExportManager.exportReportToHtmlFile(jasperPrint, fileName);
-        } else if (reportFormat.equalsIgnoreCase("pdf")) {
-            fileName += ".pdf";
-            JasperExportManager.exportReportToPdfFile(jasperPrint, fileName);
-        } else if (reportFormat.equalsIgnoreCase("csv")) {
-            JRCsvExporter exporter = new JRCsvExporter();
-            exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
-            fileName += ".csv";
-            exporter.setExporterOutput(new SimpleWriterExporterOutput(new File(fileName)));
-            SimpleCsvExporterConfiguration configuration = new SimpleCsvExporterConfiguration();
-            configuration.setWriteBOM(Boolean.TRUE);
-            configuration.setRecordDelimiter("\r\n");
-            exporter.setConfiguration(configuration);
-            exporter.exportReport();
-        } else {
-            throw new RuntimeException("Не верный формат отчета");
+        switch (reportFormat) {
+            case PDF -> JasperExportManager.exportReportToPdfStream(jasperPrint, out);
+            case HTML -> {
+                HtmlExporter exporter = new HtmlExporter();
+                exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
+                exporter.setExporterOutput(new SimpleHtmlExporterOutput(out));
+                exporter.exportReport();
+            }
+            case CSV -> {
+                JRCsvExporter exporter = new JRCsvExporter();
+                exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
+                exporter.setExporterOutput(new SimpleWriterExporterOutput(out));
+                SimpleCsvExporterConfiguration configuration = new SimpleCsvExporterConfiguration();
+                configuration.setWriteBOM(Boolean.TRUE);
+                configuration.setRecordDelimiter("\r\n");
+                exporter.setConfiguration(configuration);
+                exporter.exportReport();
+            }
         }
-        BufferedInputStream bs = new BufferedInputStream(new FileInputStream(fileName));
-        byte[] bytes = bs.readAllBytes();
-        bs.close();
-        return bytes;
     }
 
-
-    public byte[] exportGetBestUsersReport(String reportFormat)
-            throws IOException, JRException {
-        List<BestUser> users = publicationRepository.findBestUsers();
-        File file = ResourceUtils.getFile("classpath:reports/best_users.jrxml");
-        JasperReport report = JasperCompileManager.compileReport(file.getAbsolutePath());
-        JRBeanCollectionDataSource dataSource = new JRBeanCollectionDataSource(users);
-        Map<String, Object> params = new HashMap<>();
-        JasperPrint jasperPrint = JasperFillManager.fillReport(report, params, dataSource);
-        String fileName = "/home/ruslooob/Documents/reports/best_users" + LocalDateTime.now();
-        if (reportFormat.equalsIgnoreCase("html")) {
-            fileName += ".html";
-            JasperExportManager.exportReportToHtmlFile(jasperPrint, fileName);
-        } else if (reportFormat.equalsIgnoreCase("pdf")) {
-            fileName += ".pdf";
-            JasperExportManager.exportReportToPdfFile(jasperPrint, fileName);
-        } else if (reportFormat.equalsIgnoreCase("csv")) {
-            JRCsvExporter exporter = new JRCsvExporter();
-            exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
-            fileName += ".csv";
-            exporter.setExporterOutput(new SimpleWriterExporterOutput(new File(fileName)));
-            SimpleCsvExporterConfiguration configuration = new SimpleCsvExporterConfiguration();
-            configuration.setWriteBOM(Boolean.TRUE);
-            configuration.setRecordDelimiter("\r\n");
-            exporter.setConfiguration(configuration);
-            exporter.exportReport();
-        } else {
-            throw new RuntimeException("Не верный формат отчета");
+    /*шаблон читается из classpath потоком, так он находится и внутри собранного jar*/
+    private static JasperReport compile(String jrxmlPath) throws IOException, JRException {
+        try (InputStream jrxml = new ClassPathResource(jrxmlPath).getInputStream()) {
+            return JasperCompileManager.compileReport(jrxml);
         }
-        BufferedInputStream bs = new BufferedInputStream(new FileInputStream(fileName));
-        byte[] bytes = bs.readAllBytes();
-        bs.close();
-        return bytes;
     }
 }
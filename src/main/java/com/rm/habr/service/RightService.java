@@ -1,35 +1,35 @@
 package com.rm.habr.service;
 
-import com.rm.habr.model.User;
+import com.rm.habr.model.Principal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.servlet.http.HttpSession;
+import java.util.Optional;
 
 @Service
 @Slf4j
 public class RightService {
-    private final UserService userService;
+    private final PrincipalCache principalCache;
 
-    public RightService(UserService userService) {
-        this.userService = userService;
+    public RightService(PrincipalCache principalCache) {
+        this.principalCache = principalCache;
     }
 
     public boolean isUserAdmin(HttpSession session) {
-        if (!isUserAuthored(session)) {
-            return false;
-        }
-
-        return userService.isUserAdmin((Long) session.getAttribute("userId"));
+        return findPrincipal(session).map(Principal::isAdmin).orElse(false);
     }
 
     /* todo разделить этот метод на 2 части, один проверяет, что у пользователя есть аккаунт, а торой проверяет сессию */
     public boolean isUserAuthored(HttpSession session) {
-        Long userId = (Long) (session.getAttribute("userId") == null ? null : session.getAttribute("userId"));
+        return findPrincipal(session).isPresent();
+    }
+
+    private Optional<Principal> findPrincipal(HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
         if (userId == null) {
-            return false;
+            return Optional.empty();
         }
-        User userById = userService.findUserById(userId);
-        return userById != null;
+        return principalCache.find(userId);
     }
 }
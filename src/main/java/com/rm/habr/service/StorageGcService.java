@@ -0,0 +1,76 @@
+package com.rm.habr.service;
+
+import com.rm.habr.repository.PublicationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Сборка мусора в хранилище картинок. Mark: файлы из индекса хранилища порциями по storage-gc-chunk-size
+ * сверяются с publication_preview_image_path. Sweep: файлы без ссылок, созданные и не загружавшиеся повторно
+ * дольше image-release-grace-ms, удаляются вместе с уменьшенными копиями. Файлы загрузок по частям, которые еще
+ * не истекли, не удаляются даже после grace: их uploadId еще может прийти в форме публикации.
+ * Ссылка перепроверяется прямо перед удалением, чтобы не удалить картинку публикации, сохраненной во время mark.
+ */
+@Service
+@Slf4j
+public class StorageGcService {
+    private final StorageIndex storageIndex;
+    private final FileStorageService fileStorageService;
+    private final PublicationRepository publicationRepository;
+    private final ChunkedUploadService chunkedUploadService;
+    private final int chunkSize;
+    private final Duration grace;
+
+    public StorageGcService(StorageIndex storageIndex,
+                            FileStorageService fileStorageService,
+                            PublicationRepository publicationRepository,
+                            ChunkedUploadService chunkedUploadService,
+                            @Value("${storage-gc-chunk-size:1000}") int chunkSize,
+                            @Value("${image-release-grace-ms:3600000}") long graceMs) {
+        this.storageIndex = storageIndex;
+        this.fileStorageService = fileStorageService;
+        this.publicationRepository = publicationRepository;
+        this.chunkedUploadService = chunkedUploadService;
+        this.chunkSize = chunkSize;
+        this.grace = Duration.ofMillis(graceMs);
+    }
+
+    @Scheduled(initialDelayString = "${storage-gc-initial-delay-ms:60000}",
+            fixedDelayString = "${storage-gc-interval-ms:86400000}")
+    public void collect() throws IOException {
+        if (!storageIndex.isComplete()) {
+            fileStorageService.indexExisting();
+        }
+        Instant createdBefore = Instant.now().minus(grace);
+        List<StorageIndex.Entry> entries = storageIndex.getEntries();
+        int reclaimedFiles = 0;
+        long reclaimedBytes = 0;
+        for (int from = 0; from < entries.size(); from += chunkSize) {
+            List<StorageIndex.Entry> chunk = entries.subList(from, Math.min(from + chunkSize, entries.size()));
+            Set<String> referenced = publicationRepository.findReferencedPreviewImagePaths(
+                    chunk.stream().map(StorageIndex.Entry::path).toArray(String[]::new));
+            Set<String> uploaded = chunkedUploadService.getFilePaths();
+            for (StorageIndex.Entry entry : chunk) {
+                if (referenced.contains(entry.path()) || entry.createdAt().isAfter(createdBefore)
+                        || uploaded.contains(entry.path())
+                        || publicationRepository.countByPreviewImagePath(entry.path()) > 0) {
+                    continue;
+                }
+                if (fileStorageService.deleteIfUnusedFor(entry.path(), grace)) {
+                    reclaimedFiles++;
+                    reclaimedBytes += entry.size();
+                }
+            }
+        }
+        log.info("storage gc checked {} files, reclaimed {} files ({} bytes)",
+                entries.size(), reclaimedFiles, reclaimedBytes);
+    }
+}
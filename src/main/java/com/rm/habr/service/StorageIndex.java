@@ -0,0 +1,161 @@
+package com.rm.habr.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Индекс всех файлов хранилища (без уменьшенных копий): журнал, в который только дописываются строки
+ * "+\tпуть\tразмер\tsha-256\tсоздан(мс)" при сохранении и "-\tпуть" при удалении.
+ * При старте журнал проигрывается в память; когда удаленных записей становится больше живых, журнал переписывается.
+ * Первая строка "# complete" означает, что в индексе есть и файлы, сохраненные до его появления
+ * (индекс строится обходом хранилища один раз). Лежит вне каталога хранилища, чтобы не отдаваться как картинка.
+ */
+@Service
+@Slf4j
+public class StorageIndex {
+    public record Entry(String path, long size, String hash, Instant createdAt) {
+    }
+
+    private static final String COMPLETE_HEADER = "# complete";
+
+    private final Path journal;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private BufferedWriter writer;
+    private long removedCount;
+    private boolean complete;
+
+    public StorageIndex(@Value("${storage-index-path:/app/images-index.log}") String journalPath) {
+        this.journal = Paths.get(journalPath);
+    }
+
+    /*false, если индекс еще не дополнен обходом хранилища*/
+    public synchronized boolean isComplete() {
+        load();
+        return complete;
+    }
+
+    public synchronized void add(String path, long size, String hash, Instant createdAt) {
+        load();
+        Entry entry = new Entry(path, size, hash, createdAt);
+        if (entry.equals(entries.put(path, entry))) {
+            return;
+        }
+        append("+\t" + path + "\t" + size + "\t" + hash + "\t" + createdAt.toEpochMilli());
+    }
+
+    public synchronized void remove(String path) {
+        load();
+        if (entries.remove(path) == null) {
+            return;
+        }
+        append("-\t" + path);
+        removedCount++;
+        if (removedCount > entries.size()) {
+            compact();
+        }
+    }
+
+    /*снимок живых записей*/
+    public synchronized List<Entry> getEntries() {
+        load();
+        return new ArrayList<>(entries.values());
+    }
+
+    /*дополнить индекс файлами, найденными обходом хранилища, и переписать журнал*/
+    public synchronized void rebuild(Collection<Entry> scanned) {
+        load();
+        scanned.forEach(entry -> entries.putIfAbsent(entry.path(), entry));
+        complete = true;
+        compact();
+        log.info("storage index is rebuilt: {} files", entries.size());
+    }
+
+    private void load() {
+        if (writer != null) {
+            return;
+        }
+        try {
+            if (Files.exists(journal)) {
+                try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                    String line = reader.readLine();
+                    complete = COMPLETE_HEADER.equals(line);
+                    for (; line != null; line = reader.readLine()) {
+                        String[] fields = line.split("\t");
+                        if (fields[0].equals("+") && fields.length == 5) {
+                            entries.put(fields[1], new Entry(fields[1], Long.parseLong(fields[2]), fields[3],
+                                    Instant.ofEpochMilli(Long.parseLong(fields[4]))));
+                        } else if (fields[0].equals("-") && fields.length == 2) {
+                            entries.remove(fields[1]);
+                            removedCount++;
+                        }
+                        // недописанная при падении последняя строка пропускается
+                    }
+                }
+            }
+            openWriter();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void append(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*новый журнал пишется рядом и подменяет старый переименованием*/
+    private void compact() {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            Files.createDirectories(journal.toAbsolutePath().getParent());
+            Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+            try (BufferedWriter compacted = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                if (complete) {
+                    compacted.write(COMPLETE_HEADER);
+                    compacted.newLine();
+                }
+                for (Entry entry : entries.values()) {
+                    compacted.write("+\t" + entry.path() + "\t" + entry.size() + "\t" + entry.hash() + "\t"
+                            + entry.createdAt().toEpochMilli());
+                    compacted.newLine();
+                }
+            }
+            Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            removedCount = 0;
+            openWriter();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openWriter() throws IOException {
+        Files.createDirectories(journal.toAbsolutePath().getParent());
+        writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
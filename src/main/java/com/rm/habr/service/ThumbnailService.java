@@ -0,0 +1,217 @@
+package com.rm.habr.service;
+
+import com.rm.habr.service.storage.BlobStorage;
+import com.rm.habr.service.storage.LocalBlobCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Уменьшенные копии загруженных картинок шириной thumbnail-widths, хранятся рядом с оригиналом
+ * под ключом ab/abcd.jpg -> ab/abcd.w320.jpg. Строятся в фоне в ограниченном пуле; пока копии нет
+ * (или очередь была переполнена), отдается оригинал. Картинки больше thumbnail-max-pixels не декодируются:
+ * размер читается из заголовка, и такие картинки всегда отдаются в оригинале.
+ */
+@Service
+@Slf4j
+public class ThumbnailService {
+    private final BlobStorage blobStorage;
+    private final LocalBlobCache blobCache;
+    private final List<Integer> widths;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+
+    public ThumbnailService(BlobStorage blobStorage,
+                            LocalBlobCache blobCache,
+                            @Value("${thumbnail-widths:320,640,960}") List<Integer> widths,
+                            @Value("${thumbnail-executor-threads:2}") int threads,
+                            @Value("${thumbnail-queue-capacity:100}") int queueCapacity,
+                            @Value("${thumbnail-max-pixels:50000000}") long maxPixels) {
+        this.blobStorage = blobStorage;
+        this.blobCache = blobCache;
+        this.widths = widths.stream().sorted().toList();
+        this.maxPixels = maxPixels;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("thumbnail-"));
+    }
+
+    public List<Integer> getWidths() {
+        return widths;
+    }
+
+    public void generateAsync(String key) {
+        try {
+            executor.execute(() -> generate(key));
+        } catch (RejectedExecutionException e) {
+            log.warn("thumbnail queue is full, {} will be served in original size", key);
+        }
+    }
+
+    /*ключи копий не уже width, от меньшей к большей: отдается первая уже построенная*/
+    public List<String> getThumbnailKeys(String key, int width) {
+        return widths.stream()
+                .filter(thumbnailWidth -> thumbnailWidth >= width)
+                .map(thumbnailWidth -> getThumbnailKey(key, thumbnailWidth))
+                .toList();
+    }
+
+    /*
+     * Будет ли для оригинала копия не уже width: копии строятся только уже оригинала
+     * и только для картинок, которые вообще уменьшаются
+     */
+    public boolean isThumbnailExpected(Path original, int width) {
+        Optional<Dimension> size = readSize(original);
+        if (size.isEmpty() || isTooLarge(size.get())) {
+            return false;
+        }
+        int originalWidth = size.get().width;
+        return widths.stream().anyMatch(thumbnailWidth -> thumbnailWidth >= width && thumbnailWidth < originalWidth);
+    }
+
+    /*уменьшенная копия: имя вида abcd.w320.jpg*/
+    public boolean isThumbnail(String key) {
+        return key.matches(".*\\.w\\d+\\.[a-z0-9]+");
+    }
+
+    public void deleteThumbnails(String key) throws IOException {
+        for (Integer width : widths) {
+            String thumbnailKey = getThumbnailKey(key, width);
+            blobStorage.delete(thumbnailKey);
+            blobCache.evict(thumbnailKey);
+        }
+    }
+
+    private void generate(String key) {
+        try {
+            Optional<Path> original = blobCache.get(key);
+            if (original.isEmpty()) {
+                log.warn("{} is missing in blob storage, thumbnails are skipped", key);
+                return;
+            }
+            Optional<Dimension> size = readSize(original.get());
+            if (size.isEmpty()) {
+                log.warn("{} is not an image ImageIO can read, thumbnails are skipped", key);
+                return;
+            }
+            if (isTooLarge(size.get())) {
+                log.warn("{} is {}x{} pixels, thumbnails are skipped", key, size.get().width, size.get().height);
+                return;
+            }
+            BufferedImage image = ImageIO.read(original.get().toFile());
+            if (image == null) {
+                log.warn("{} is not an image ImageIO can read, thumbnails are skipped", key);
+                return;
+            }
+            String format = getFormat(key);
+            for (Integer width : widths) {
+                // увеличенные копии не нужны: для них браузер получит оригинал
+                if (width >= image.getWidth()) {
+                    break;
+                }
+                String thumbnailKey = getThumbnailKey(key, width);
+                // рядом с оригиналом, чтобы в локальном хранилище запись была переименованием
+                Path tmp = Files.createTempFile(original.get().getParent(), "thumbnail-", ".tmp");
+                try {
+                    ImageIO.write(scale(image, width, format), format, tmp.toFile());
+                    // копия появляется под своим ключом только целиком
+                    blobStorage.put(thumbnailKey, tmp);
+                    blobCache.evict(thumbnailKey);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("could not generate thumbnails for {}", key, e);
+        }
+    }
+
+    /*размер из заголовка, без декодирования самой картинки*/
+    private static Optional<Dimension> readSize(Path file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) {
+                return Optional.empty();
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private boolean isTooLarge(Dimension size) {
+        return (long) size.width * size.height > maxPixels;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, String format) {
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        // у jpeg нет альфа-канала, прозрачные места заливаются белым
+        boolean opaque = format.equals("jpg");
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, opaque ? Color.WHITE : null, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /*копии пишутся в формате оригинала, если ImageIO его умеет писать, иначе в png*/
+    private static String getFormat(String key) {
+        String extension = getExtension(key).map(String::toLowerCase).orElse("");
+        if (extension.equals("jpeg")) {
+            extension = "jpg";
+        }
+        return ImageIO.getImageWritersBySuffix(extension).hasNext() ? extension : "png";
+    }
+
+    private static String getThumbnailKey(String key, int width) {
+        String extension = getExtension(key).orElse("");
+        String baseName = extension.isEmpty() ? key : key.substring(0, key.length() - extension.length() - 1);
+        return baseName + ".w" + width + "." + getFormat(key);
+    }
+
+    private static Optional<String> getExtension(String key) {
+        int slash = key.lastIndexOf('/');
+        int dot = key.lastIndexOf('.');
+        return dot <= slash ? Optional.empty() : Optional.of(key.substring(dot + 1));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
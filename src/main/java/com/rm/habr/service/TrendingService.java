@@ -0,0 +1,73 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.MiniPublication;
+import com.rm.habr.repository.PublicationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Блок "Читают сейчас" считается в фоне раз в trending-refresh-interval-ms и подменяется целиком,
+ * запросы только читают готовый снимок.
+ */
+@Service
+@Slf4j
+public class TrendingService {
+    private final PublicationRepository publicationRepository;
+    private final AtomicReference<TrendingSnapshot> snapshot = new AtomicReference<>();
+    private final Timer refreshTimer;
+
+    public TrendingService(PublicationRepository publicationRepository, MeterRegistry meterRegistry) {
+        this.publicationRepository = publicationRepository;
+        this.refreshTimer = Timer.builder("habr.trending.refresh.duration")
+                .description("Время пересчета блока лучших публикаций недели")
+                .register(meterRegistry);
+        Gauge.builder("habr.trending.staleness.seconds", this, TrendingService::getStalenessSeconds)
+                .description("Возраст текущего снимка блока лучших публикаций недели")
+                .register(meterRegistry);
+    }
+
+    public List<MiniPublication> getBestMiniPublications() {
+        TrendingSnapshot current = snapshot.get();
+        if (current == null) {
+            // первый запрос пришел раньше фонового пересчета
+            refresh();
+            current = snapshot.get();
+        }
+        return current.miniPublications();
+    }
+
+    @Scheduled(fixedDelayString = "${trending-refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (DataAccessException e) {
+            log.warn("could not refresh trending publications, keeping the previous snapshot", e);
+        }
+    }
+
+    private void refresh() {
+        List<MiniPublication> miniPublications = refreshTimer.record(publicationRepository::getBestMiniPublications);
+        snapshot.set(new TrendingSnapshot(List.copyOf(miniPublications), Instant.now()));
+    }
+
+    private double getStalenessSeconds() {
+        TrendingSnapshot current = snapshot.get();
+        if (current == null) {
+            return Double.NaN;
+        }
+        return Duration.between(current.refreshedAt(), Instant.now()).toMillis() / 1000.0;
+    }
+
+    private record TrendingSnapshot(List<MiniPublication> miniPublications, Instant refreshedAt) {
+    }
+}
@@ -19,11 +19,13 @@ import java.util.Optional;
 public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
     Logger log = LoggerFactory.getLogger(UserService.class);
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, PrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
     }
 
 
@@ -71,6 +73,7 @@ public class UserService {
     public void saveAdmin(RegisterUserDto user) {
         Long saveId = save(user);
         userRepository.saveAdmin(saveId);
+        principalCache.invalidate(saveId);
     }
 
     public UsersPage getUsersPage(Integer page) {
@@ -87,5 +90,6 @@ public class UserService {
 
     public void delete(long userId) {
         userRepository.delete(userId);
+        principalCache.invalidate(userId);
     }
 }
@@ -0,0 +1,93 @@
+package com.rm.habr.service;
+
+import com.rm.habr.repository.PublicationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Просмотры копятся в памяти и пишутся в БД пачкой раз в views-count-flush-interval-ms,
+ * это и есть максимальное окно потери просмотров при падении приложения.
+ * ConcurrentHashMap блокирует только свою корзину, поэтому счетчики разных публикаций не мешают друг другу.
+ */
+@Service
+@Slf4j
+public class ViewsCountService {
+    /*по две привязки на строку, с запасом до предела драйвера в 32767 параметров*/
+    private static final int FLUSH_CHUNK_SIZE = 1000;
+
+    private final PublicationRepository publicationRepository;
+    private final ConcurrentHashMap<Long, Long> pendingViews = new ConcurrentHashMap<>();
+
+    public ViewsCountService(PublicationRepository publicationRepository) {
+        this.publicationRepository = publicationRepository;
+    }
+
+    public void increment(long publicationId) {
+        pendingViews.merge(publicationId, 1L, Long::sum);
+    }
+
+    /*просмотры, которые еще не записаны в БД*/
+    public long getPendingViews(long publicationId) {
+        return pendingViews.getOrDefault(publicationId, 0L);
+    }
+
+    @Scheduled(fixedDelayString = "${views-count-flush-interval-ms:5000}")
+    public void flush() {
+        SortedMap<Long, Long> batch = new TreeMap<>();
+        for (Long publicationId : pendingViews.keySet()) {
+            Long views = pendingViews.remove(publicationId);
+            if (views != null) {
+                batch.put(publicationId, views);
+            }
+        }
+        write(batch);
+    }
+
+    /*сбросить просмотры одной публикации, например перед лайком (триггер проверяет, что карма не больше просмотров)*/
+    public void flush(long publicationId) {
+        Long views = pendingViews.remove(publicationId);
+        if (views != null) {
+            write(Map.of(publicationId, views));
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /*пачка пишется частями по FLUSH_CHUNK_SIZE в порядке id; при ошибке обратно возвращается только несохраненная часть*/
+    private void write(Map<Long, Long> batch) {
+        Map<Long, Long> chunk = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : batch.entrySet()) {
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() == FLUSH_CHUNK_SIZE) {
+                writeChunk(chunk);
+                chunk = new HashMap<>();
+            }
+        }
+        writeChunk(chunk);
+    }
+
+    private void writeChunk(Map<Long, Long> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            publicationRepository.addViewsCounts(chunk);
+        } catch (DataAccessException e) {
+            // вернуть просмотры обратно, чтобы записать их при следующем сбросе
+            chunk.forEach((publicationId, views) -> pendingViews.merge(publicationId, views, Long::sum));
+            log.warn("could not flush views count for {} publications", chunk.size(), e);
+        }
+    }
+}
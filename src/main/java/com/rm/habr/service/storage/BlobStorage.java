@@ -0,0 +1,42 @@
+package com.rm.habr.service.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/*
+ * Хранилище файлов по ключу (относительному пути вида ab/cd/abcd.jpg).
+ * Реализация выбирается настройкой storage-backend: filesystem (локальный каталог) или s3 (S3-совместимое, например MinIO).
+ */
+public interface BlobStorage {
+    record BlobInfo(String key, long size, Instant lastModified) {
+    }
+
+    /*сохраняет полностью записанный локальный файл под ключом; исходный файл после этого можно удалить*/
+    void put(String key, Path file) throws IOException;
+
+    Optional<BlobInfo> stat(String key) throws IOException;
+
+    /*обновляет время изменения: по нему очистка хранилища не трогает только что использованные файлы*/
+    void touch(String key) throws IOException;
+
+    /*копирует файл в target; NoSuchFileException, если ключа нет*/
+    void download(String key, Path target) throws IOException;
+
+    boolean delete(String key) throws IOException;
+
+    /*все ключи хранилища; поток надо закрыть*/
+    Stream<BlobInfo> list() throws IOException;
+
+    /*файлы хранилища лежат на локальном диске: их не нужно копировать в LocalBlobCache*/
+    default boolean isLocal() {
+        return false;
+    }
+
+    /*файл на локальном диске, если хранилище локальное и его можно отдавать без копирования*/
+    default Optional<Path> getLocalFile(String key) {
+        return Optional.empty();
+    }
+}
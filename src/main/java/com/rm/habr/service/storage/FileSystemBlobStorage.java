@@ -0,0 +1,106 @@
+package com.rm.habr.service.storage;
+
+import com.rm.habr.config.Config;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/*файлы в локальном каталоге file-storage-path; временные загрузки лежат в нем же, поэтому put - это переименование*/
+@Service
+@ConditionalOnProperty(name = "storage-backend", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemBlobStorage implements BlobStorage {
+    private final Path root;
+
+    public FileSystemBlobStorage(Config config) {
+        this.root = Paths.get(config.getFileStoragePath()).normalize();
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // ключ - хэш содержимого, параллельный запрос сохранил то же самое
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String key) throws IOException {
+        Path file = resolve(key);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return Optional.of(new BlobInfo(key, attributes.size(), attributes.lastModifiedTime().toInstant()));
+    }
+
+    @Override
+    public void touch(String key) throws IOException {
+        Files.setLastModifiedTime(resolve(key), FileTime.from(Instant.now()));
+    }
+
+    @Override
+    public void download(String key, Path target) throws IOException {
+        Files.copy(resolve(key), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Stream<BlobInfo> list() throws IOException {
+        return Files.walk(root)
+                .filter(Files::isRegularFile)
+                .map(file -> {
+                    try {
+                        String key = root.relativize(file).toString().replace('\\', '/');
+                        return new BlobInfo(key, Files.size(file), Files.getLastModifiedTime(file).toInstant());
+                    } catch (IOException e) {
+                        // файл удалили во время обхода
+                        return null;
+                    }
+                })
+                .filter(info -> info != null);
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    public Optional<Path> getLocalFile(String key) {
+        try {
+            Path file = resolve(key);
+            return Files.isRegularFile(file) && Files.isReadable(file) ? Optional.of(file) : Optional.empty();
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /*пути, выходящие за пределы хранилища, не разрешаются*/
+    private Path resolve(String key) throws NoSuchFileException {
+        Path file = root.resolve(key).normalize();
+        if (!file.startsWith(root)) {
+            throw new NoSuchFileException(key);
+        }
+        return file;
+    }
+}
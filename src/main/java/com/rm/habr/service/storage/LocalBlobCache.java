@@ -0,0 +1,143 @@
+package com.rm.habr.service.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Локальная копия файлов удаленного хранилища: файл скачивается при первом чтении и дальше отдается с диска.
+ * Суммарный размер ограничен blob-cache-max-bytes, при переполнении удаляются давно не читавшиеся файлы.
+ * Если хранилище само локальное, файлы отдаются из него напрямую, без копии.
+ * Отсутствующие ключи (например, еще не построенные уменьшенные копии) запоминаются на MISSING_TTL,
+ * чтобы не ходить за ними в хранилище на каждый запрос.
+ */
+@Service
+@Slf4j
+public class LocalBlobCache {
+    private static final Duration MISSING_TTL = Duration.ofSeconds(60);
+
+    private final BlobStorage blobStorage;
+    private final Path root;
+    private final long maxBytes;
+    /*ключ -> размер, в порядке обращения*/
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Instant> missingUntil = new HashMap<>();
+    private long totalBytes;
+
+    public LocalBlobCache(BlobStorage blobStorage,
+                          @Value("${blob-cache-path:/app/blob-cache/}") String path,
+                          @Value("${blob-cache-max-bytes:1073741824}") long maxBytes) {
+        this.blobStorage = blobStorage;
+        this.root = Paths.get(path).normalize();
+        this.maxBytes = maxBytes;
+    }
+
+    /*размеры файлов хранятся только в памяти, поэтому оставшееся с прошлого запуска удаляется*/
+    @PostConstruct
+    public void clear() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    public Optional<Path> get(String key) {
+        // у локального хранилища отсутствующий файл там же и отсутствует: копировать и запоминать нечего
+        if (blobStorage.isLocal()) {
+            return blobStorage.getLocalFile(key);
+        }
+        Path file = root.resolve(key).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            if (sizes.get(key) != null && Files.isRegularFile(file)) {
+                return Optional.of(file);
+            }
+            Instant missing = missingUntil.get(key);
+            if (missing != null && missing.isAfter(Instant.now())) {
+                return Optional.empty();
+            }
+        }
+        try {
+            return Optional.of(download(key, file));
+        } catch (NoSuchFileException e) {
+            synchronized (this) {
+                missingUntil.values().removeIf(until -> until.isBefore(Instant.now()));
+                missingUntil.put(key, Instant.now().plus(MISSING_TTL));
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("could not download {} from blob storage", key, e);
+            return Optional.empty();
+        }
+    }
+
+    /*убирает локальную копию и отметку об отсутствии: ключ удален или только что записан*/
+    public synchronized void evict(String key) {
+        missingUntil.remove(key);
+        Long size = sizes.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            deleteQuietly(root.resolve(key));
+        }
+    }
+
+    /*
+     * Скачивание идет во временный файл без блокировки, на место он переносится целиком:
+     * параллельные чтения одного ключа скачают его дважды, но недописанный файл не увидят.
+     */
+    private Path download(String key, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), "download-", ".tmp");
+        try {
+            blobStorage.download(key, tmp);
+            long size = Files.size(tmp);
+            synchronized (this) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Long previous = sizes.put(key, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+                missingUntil.remove(key);
+                evictOverflow(key);
+            }
+            return file;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /*самый последний файл не удаляется, даже если он один больше всего кэша*/
+    private void evictOverflow(String keep) {
+        Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            deleteQuietly(root.resolve(entry.getKey()));
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("could not delete cached {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.rm.habr.service.storage;
+
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*S3-совместимое хранилище (AWS S3, MinIO); общее для всех узлов приложения*/
+@Service
+@ConditionalOnProperty(name = "storage-backend", havingValue = "s3")
+public class S3BlobStorage implements BlobStorage {
+    private final MinioClient client;
+    private final String bucket;
+
+    public S3BlobStorage(@Value("${s3-endpoint}") String endpoint,
+                         @Value("${s3-access-key}") String accessKey,
+                         @Value("${s3-secret-key}") String secretKey,
+                         @Value("${s3-bucket}") String bucket) {
+        this.client = MinioClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .build();
+        this.bucket = bucket;
+    }
+
+    @PostConstruct
+    public void createBucket() throws IOException {
+        call(() -> {
+            if (!client.bucketExists(BucketExistsArgs.builder().bucket(bucket).build())) {
+                client.makeBucket(MakeBucketArgs.builder().bucket(bucket).build());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        call(() -> client.uploadObject(UploadObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .filename(file.toString())
+                .build()));
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String key) throws IOException {
+        try {
+            StatObjectResponse stat = call(() -> client.statObject(StatObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(key)
+                    .build()));
+            return Optional.of(new BlobInfo(key, stat.size(), stat.lastModified().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /*у объекта в S3 время изменения меняется только перезаписью, поэтому объект копируется сам в себя*/
+    @Override
+    public void touch(String key) throws IOException {
+        call(() -> client.copyObject(CopyObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .source(CopySource.builder().bucket(bucket).object(key).build())
+                .metadataDirective(Directive.REPLACE)
+                .build()));
+    }
+
+    @Override
+    public void download(String key, Path target) throws IOException {
+        try (InputStream in = call(() -> client.getObject(GetObjectArgs.builder()
+                .bucket(bucket)
+                .object(key)
+                .build()))) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        if (stat(key).isEmpty()) {
+            return false;
+        }
+        call(() -> {
+            client.removeObject(RemoveObjectArgs.builder().bucket(bucket).object(key).build());
+            return null;
+        });
+        return true;
+    }
+
+    @Override
+    public Stream<BlobInfo> list() {
+        Iterable<Result<Item>> objects = client.listObjects(ListObjectsArgs.builder()
+                .bucket(bucket)
+                .recursive(true)
+                .build());
+        return StreamSupport.stream(objects.spliterator(), false)
+                .map(result -> {
+                    try {
+                        Item item = call(result::get);
+                        return new BlobInfo(item.objectName(), item.size(), item.lastModified().toInstant());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private interface MinioCall<T> {
+        T call() throws Exception;
+    }
+
+    /*ошибки клиента MinIO сводятся к IOException, отсутствующий ключ - к NoSuchFileException*/
+    private static <T> T call(MinioCall<T> minioCall) throws IOException {
+        try {
+            return minioCall.call();
+        } catch (ErrorResponseException e) {
+            String code = e.errorResponse().code();
+            if (code.equals("NoSuchKey") || code.equals("NoSuchObject")) {
+                throw new NoSuchFileException(e.errorResponse().objectName());
+            }
+            throw new IOException(e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -1,18 +1,10 @@
-create procedure delete_publication(id bigint)
+create or replace procedure delete_publication(id bigint)
     language plpgsql
 as
 $$
-DECLARE
-    cmnt_id        bigint;
-    -- id комментариев, принадлежащей этой публикации
-    comment_ids bigint[];
 BEGIN
-    comment_ids := ARRAY(SELECT comment_id FROM comment WHERE publication_id = id);
-    -- удалить все лайки с комментариев
-    FOREACH cmnt_id IN ARRAY comment_ids
-        LOOP
-            DELETE FROM upwoted_c uc WHERE uc.comment_id = cmnt_id;
-        END LOOP;
+    -- удалить все лайки с комментариев одним запросом
+    DELETE FROM upwoted_c uc USING comment c WHERE uc.comment_id = c.comment_id AND c.publication_id = id;
     -- удалить все комментарии под публикацией
     DELETE FROM comment WHERE publication_id = id;
     -- удалить все лайки с публикации
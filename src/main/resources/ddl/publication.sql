@@ -12,4 +12,60 @@ create table publication
 );
 
 alter table publication
-    add column publication_preview_image_path varchar(200)
\ No newline at end of file
+    add column publication_preview_image_path varchar(200);
+
+-- короткий текстовый отрывок для ленты, заполняется приложением при сохранении;
+-- у существующих публикаций его заполняет фоновый перерендер (MarkdownRerenderService)
+alter table publication
+    add column publication_excerpt varchar(300);
+
+-- отрендеренный html, хэш исходного markdown и версия рендера (при смене версии публикации перерендериваются в фоне)
+alter table publication
+    add column publication_html             text,
+    add column publication_content_hash     varchar(64),
+    add column publication_renderer_version varchar(100);
+
+-- полнотекстовый поиск по заголовку (вес A) и тексту (вес B), заполняется приложением при сохранении
+alter table publication
+    add column publication_search_vector tsvector;
+
+create index publication_search_vector_idx
+    on publication using gin (publication_search_vector);
+
+-- вектор для публикаций, сохраненных до появления поиска
+update publication
+set publication_search_vector =
+        setweight(to_tsvector('russian', publication_header), 'A') || setweight(to_tsvector('english', publication_header), 'A') ||
+        setweight(to_tsvector('russian', publication_content), 'B') || setweight(to_tsvector('english', publication_content), 'B')
+where publication_search_vector is null;
+
+-- индекс для keyset-пагинации ленты
+create index publication_datetime_id_idx
+    on publication (publication_datetime, publication_id);
+
+-- publication_karma поддерживается приложением при добавлении/удалении лайка;
+-- лучшие публикации недели выбираются по диапазону дат и сортируются по карме
+drop index if exists publication_karma_idx;
+
+create index publication_datetime_karma_idx
+    on publication (publication_datetime, publication_karma);
+
+-- карма для лайков, поставленных до того, как приложение начало ее поддерживать
+update publication p
+set publication_karma = (select count(*) from upwoted_p u where u.publication_id = p.publication_id)
+where publication_karma <> (select count(*) from upwoted_p u where u.publication_id = p.publication_id);
+
+-- удаление публикации: сразу скрывается флагом, строки удаляются фоновой очисткой пачками
+alter table publication
+    add column publication_deleted boolean not null default false;
+
+-- лучшие публикации за все время: сортировка по карме без диапазона дат
+create index publication_karma_idx
+    on publication (publication_karma desc) where not publication_deleted;
+
+create index publication_deleted_idx
+    on publication (publication_id) where publication_deleted;
+
+-- картинки общие для публикаций с одинаковым файлом превью, индекс для подсчета ссылок при удалении
+create index publication_preview_image_path_idx
+    on publication (publication_preview_image_path);
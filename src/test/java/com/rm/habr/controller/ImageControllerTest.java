@@ -0,0 +1,46 @@
+package com.rm.habr.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageControllerTest {
+    private static final long SIZE = 1000;
+
+    @Test
+    void parsesClosedRange() {
+        assertArrayEquals(new long[]{0, 99}, ImageController.parseRange("bytes=0-99", SIZE));
+        assertArrayEquals(new long[]{999, 999}, ImageController.parseRange("bytes=999-999", SIZE));
+        // конец за пределами файла обрезается по размеру
+        assertArrayEquals(new long[]{500, 999}, ImageController.parseRange("bytes=500-5000", SIZE));
+    }
+
+    @Test
+    void parsesOpenEndedRange() {
+        assertArrayEquals(new long[]{500, 999}, ImageController.parseRange("bytes=500-", SIZE));
+        assertArrayEquals(new long[]{0, 999}, ImageController.parseRange("bytes= 0 - ", SIZE));
+    }
+
+    @Test
+    void parsesSuffixRange() {
+        assertArrayEquals(new long[]{900, 999}, ImageController.parseRange("bytes=-100", SIZE));
+        assertArrayEquals(new long[]{0, 999}, ImageController.parseRange("bytes=-5000", SIZE));
+    }
+
+    @Test
+    void unsatisfiableRangeIsNull() {
+        assertNull(ImageController.parseRange("bytes=1000-", SIZE));
+        assertNull(ImageController.parseRange("bytes=1000-1001", SIZE));
+        assertNull(ImageController.parseRange("bytes=10-5", SIZE));
+        assertNull(ImageController.parseRange("bytes=-0", SIZE));
+        assertNull(ImageController.parseRange("bytes=0-0", 0));
+    }
+
+    @Test
+    void unsupportedRangeServesWholeFile() {
+        assertEquals(0, ImageController.parseRange("bytes=0-1,5-6", SIZE).length);
+        assertEquals(0, ImageController.parseRange("items=0-1", SIZE).length);
+        assertEquals(0, ImageController.parseRange("bytes=10", SIZE).length);
+        assertEquals(0, ImageController.parseRange("bytes=a-b", SIZE).length);
+    }
+}
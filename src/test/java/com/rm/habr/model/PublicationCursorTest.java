@@ -0,0 +1,42 @@
+package com.rm.habr.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublicationCursorTest {
+
+    @Test
+    void decodesEncoded() {
+        PublicationCursor cursor = new PublicationCursor(LocalDateTime.of(2022, 3, 14, 15, 9, 26, 535_000_000), 42);
+
+        assertEquals(Optional.of(cursor), PublicationCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void decodesEncodedWithoutSeconds() {
+        PublicationCursor cursor = new PublicationCursor(LocalDateTime.of(2022, 1, 1, 10, 0), 1);
+
+        assertEquals(Optional.of(cursor), PublicationCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void rejectsMissingAndTamperedCursor() {
+        assertTrue(PublicationCursor.decode(null).isEmpty());
+        assertTrue(PublicationCursor.decode(" ").isEmpty());
+        assertTrue(PublicationCursor.decode("not base64!").isEmpty());
+        assertTrue(PublicationCursor.decode(encode("2022-01-01T10:00")).isEmpty());
+        assertTrue(PublicationCursor.decode(encode("yesterday|5")).isEmpty());
+        assertTrue(PublicationCursor.decode(encode("2022-01-01T10:00|abc")).isEmpty());
+        assertTrue(PublicationCursor.decode(encode("2022-01-01T10:00|")).isEmpty());
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
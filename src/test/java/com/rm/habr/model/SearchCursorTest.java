@@ -0,0 +1,42 @@
+package com.rm.habr.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCursorTest {
+
+    @Test
+    void decodesEncoded() {
+        SearchCursor cursor = new SearchCursor(0.0607927f, 42);
+
+        assertEquals(Optional.of(cursor), SearchCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void decodesEncodedExtremeRank() {
+        SearchCursor cursor = new SearchCursor(Float.MIN_VALUE, Long.MAX_VALUE);
+
+        assertEquals(Optional.of(cursor), SearchCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void rejectsMissingAndTamperedCursor() {
+        assertTrue(SearchCursor.decode(null).isEmpty());
+        assertTrue(SearchCursor.decode("").isEmpty());
+        assertTrue(SearchCursor.decode("not base64!").isEmpty());
+        assertTrue(SearchCursor.decode(encode("0.5")).isEmpty());
+        assertTrue(SearchCursor.decode(encode("high|5")).isEmpty());
+        assertTrue(SearchCursor.decode(encode("0.5|abc")).isEmpty());
+        assertTrue(SearchCursor.decode(encode("NaN|5")).isEmpty());
+        assertTrue(SearchCursor.decode(encode("Infinity|5")).isEmpty());
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
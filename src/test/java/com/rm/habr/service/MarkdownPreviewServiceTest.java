@@ -0,0 +1,53 @@
+package com.rm.habr.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarkdownPreviewServiceTest {
+    private final MarkdownService markdownService = new MarkdownService();
+    private final MarkdownPreviewService previewService = new MarkdownPreviewService(markdownService);
+
+    @Test
+    void splitsOnBlankLines() {
+        assertEquals(List.of("# Заголовок\n", "первая строка\nвторая строка\n", "абзац\n"),
+                MarkdownPreviewService.splitBlocks("# Заголовок\n\nпервая строка\nвторая строка\n\n\nабзац"));
+        assertEquals(List.of("a\n", "b\n"), MarkdownPreviewService.splitBlocks("a\r\n\r\nb\r\n"));
+        assertEquals(List.of(), MarkdownPreviewService.splitBlocks("\n\n"));
+    }
+
+    @Test
+    void keepsFenceWithBlankLinesInOneBlock() {
+        assertEquals(List.of("```java\nint a;\n\nint b;\n```\n", "после\n"),
+                MarkdownPreviewService.splitBlocks("```java\nint a;\n\nint b;\n```\n\nпосле\n"));
+        assertEquals(List.of("~~~\n\n```\n\n~~~\n"),
+                MarkdownPreviewService.splitBlocks("~~~\n\n```\n\n~~~\n"));
+    }
+
+    @Test
+    void keepsLooseListAndContinuationInOneBlock() {
+        assertEquals(List.of("- a\n\n- b\n\n  продолжение b\n", "текст\n"),
+                MarkdownPreviewService.splitBlocks("- a\n\n- b\n\n  продолжение b\n\nтекст\n"));
+        assertEquals(List.of("1. a\n\n2. b\n"), MarkdownPreviewService.splitBlocks("1. a\n\n2. b\n"));
+        assertEquals(List.of("абзац\n", "- пункт\n"), MarkdownPreviewService.splitBlocks("абзац\n\n- пункт\n"));
+    }
+
+    @Test
+    void previewMatchesFullRender() {
+        List<String> documents = List.of(
+                "# Заголовок\n\nабзац с *выделением*\n\n> цитата\n",
+                "- a\n\n- b\n\n  продолжение\n\nтекст после списка\n",
+                "1. один\n\n2. два\n\n- другой список\n",
+                "```\nкод\n\nс пустой строкой\n```\n\nтекст\n",
+                "абзац\n\n    код с отступом\n\nеще абзац\n",
+                "[ссылка][метка]\n\nтекст\n\n[метка]: https://example.com\n",
+                "| a | b |\n|---|---|\n| 1 | 2 |\n\n~~зачеркнуто~~\n");
+        for (String document : documents) {
+            assertEquals(markdownService.getHtmlContent(document), previewService.getPreviewHtml(document), document);
+            // второй раз блоки берутся из кэша
+            assertEquals(markdownService.getHtmlContent(document), previewService.getPreviewHtml(document), document);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.rm.habr.service;
+
+import com.rm.habr.model.Suggestion;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixIndexTest {
+
+    @Test
+    void findsByPrefixOfAnyWord() {
+        PrefixIndex index = new PrefixIndex();
+        index.put(1, "Spring Boot в продакшене");
+        index.put(2, "Spring Security");
+        index.put(3, "Java");
+
+        assertEquals(List.of(1L, 2L), ids(index.find("spr", 10)));
+        assertEquals(List.of(1L), ids(index.find("boo", 10)));
+        assertEquals(List.of(1L), ids(index.find("продакшене", 10)));
+        assertEquals(List.of(3L), ids(index.find("java", 10)));
+        assertTrue(index.find("javascript", 10).isEmpty());
+        assertTrue(index.find("oot", 10).isEmpty());
+    }
+
+    @Test
+    void normalizesCaseSpacesAndYo() {
+        PrefixIndex index = new PrefixIndex();
+        index.put(1, "Ёлка   и  ЕЖИК");
+
+        assertEquals(List.of(1L), ids(index.find("елк", 10)));
+        assertEquals(List.of(1L), ids(index.find("  ЁЖ", 10)));
+        assertEquals(List.of(1L), ids(index.find("елка и е", 10)));
+        assertTrue(index.find("   ", 10).isEmpty());
+        assertTrue(index.find(null, 10).isEmpty());
+    }
+
+    @Test
+    void returnsEachIdOnceUpToLimit() {
+        PrefixIndex index = new PrefixIndex();
+        index.put(1, "test testing tests");
+        index.put(2, "test");
+        index.put(3, "tester");
+
+        assertEquals(List.of(2L, 1L, 3L), ids(index.find("test", 10)));
+        assertEquals(2, index.find("test", 2).size());
+    }
+
+    @Test
+    void removesAllKeysOfId() {
+        PrefixIndex index = new PrefixIndex();
+        index.put(1, "alpha beta");
+        index.put(2, "alpha");
+
+        index.remove(1);
+        index.remove(42);
+
+        assertEquals(List.of(2L), ids(index.find("alpha", 10)));
+        assertTrue(index.find("beta", 10).isEmpty());
+    }
+
+    @Test
+    void putReplacesOldText() {
+        PrefixIndex index = new PrefixIndex();
+        index.put(1, "old header");
+        index.put(1, "new header");
+
+        assertTrue(index.find("old", 10).isEmpty());
+        List<Suggestion> found = index.find("header", 10);
+        assertEquals(1, found.size());
+        assertEquals("new header", found.get(0).getText());
+    }
+
+    @Test
+    void replaceAllDropsMissingIds() {
+        PrefixIndex index = new PrefixIndex();
+        index.put(1, "first");
+        index.put(2, "second");
+
+        index.replaceAll(List.of(new Suggestion(2L, "second"), new Suggestion(3L, "third")));
+
+        assertTrue(index.find("first", 10).isEmpty());
+        assertEquals(List.of(2L), ids(index.find("sec", 10)));
+        assertEquals(List.of(3L), ids(index.find("thi", 10)));
+    }
+
+    private static List<Long> ids(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::getId).toList();
+    }
+}
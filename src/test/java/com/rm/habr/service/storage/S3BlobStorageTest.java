@@ -0,0 +1,100 @@
+package com.rm.habr.service.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers(disabledWithoutDocker = true)
+class S3BlobStorageTest {
+    @Container
+    private static final GenericContainer<?> MINIO = new GenericContainer<>("minio/minio:RELEASE.2023-01-31T02-24-19Z")
+            .withEnv("MINIO_ROOT_USER", "minioadmin")
+            .withEnv("MINIO_ROOT_PASSWORD", "minioadmin")
+            .withCommand("server", "/data")
+            .withExposedPorts(9000)
+            .waitingFor(Wait.forHttp("/minio/health/live").forPort(9000));
+
+    @TempDir
+    Path tmp;
+
+    private S3BlobStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String endpoint = "http://" + MINIO.getHost() + ":" + MINIO.getMappedPort(9000);
+        // у каждого теста свой бакет, чтобы list не видел чужих ключей
+        storage = new S3BlobStorage(endpoint, "minioadmin", "minioadmin", "images-" + UUID.randomUUID());
+        storage.createBucket();
+    }
+
+    @Test
+    void putThenStatAndDownload() throws IOException {
+        storage.put("ab/cd/abcd.jpg", write("image"));
+
+        Optional<BlobStorage.BlobInfo> info = storage.stat("ab/cd/abcd.jpg");
+        assertTrue(info.isPresent());
+        assertEquals(5, info.get().size());
+
+        Path target = tmp.resolve("downloaded");
+        storage.download("ab/cd/abcd.jpg", target);
+        assertEquals("image", Files.readString(target));
+    }
+
+    @Test
+    void missingKey() throws IOException {
+        assertTrue(storage.stat("ab/cd/missing.jpg").isEmpty());
+        assertThrows(NoSuchFileException.class, () -> storage.download("ab/cd/missing.jpg", tmp.resolve("missing")));
+        assertFalse(storage.delete("ab/cd/missing.jpg"));
+    }
+
+    @Test
+    void touchKeepsContent() throws IOException {
+        storage.put("ab/cd/abcd.jpg", write("image"));
+        BlobStorage.BlobInfo before = storage.stat("ab/cd/abcd.jpg").orElseThrow();
+
+        storage.touch("ab/cd/abcd.jpg");
+
+        BlobStorage.BlobInfo after = storage.stat("ab/cd/abcd.jpg").orElseThrow();
+        assertFalse(after.lastModified().isBefore(before.lastModified()));
+        Path target = tmp.resolve("touched");
+        storage.download("ab/cd/abcd.jpg", target);
+        assertEquals("image", Files.readString(target));
+    }
+
+    @Test
+    void listAndDelete() throws IOException {
+        storage.put("ab/cd/abcd.jpg", write("first"));
+        storage.put("ef/gh/efgh.w320.png", write("second"));
+
+        try (Stream<BlobStorage.BlobInfo> blobs = storage.list()) {
+            assertEquals(List.of("ab/cd/abcd.jpg", "ef/gh/efgh.w320.png"),
+                    blobs.map(BlobStorage.BlobInfo::key).sorted().toList());
+        }
+
+        assertTrue(storage.delete("ab/cd/abcd.jpg"));
+        assertTrue(storage.stat("ab/cd/abcd.jpg").isEmpty());
+        try (Stream<BlobStorage.BlobInfo> blobs = storage.list()) {
+            assertEquals(List.of("ef/gh/efgh.w320.png"), blobs.map(BlobStorage.BlobInfo::key).toList());
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.writeString(Files.createTempFile(tmp, "blob-", ".tmp"), content, StandardCharsets.UTF_8);
+    }
+}